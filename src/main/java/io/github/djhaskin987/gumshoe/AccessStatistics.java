@@ -0,0 +1,123 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A snapshot of how often each property of a <code>TrackedProperties</code>
+ * object has been looked up. Snapshots never change, and so may be kept or
+ * handed to other threads freely.
+ *
+ * @since 1.1.0
+ */
+public final class AccessStatistics {
+
+    /**
+     * How often each property was looked up.
+     */
+    private final Map<String, Long> counts;
+
+    /**
+     * The properties that were set when the snapshot was taken.
+     */
+    private final Set<String> setKeys;
+
+    /**
+     * Constructor for the AccessStatistics class.
+     *
+     * @param givenCounts
+     *                        how often each property was looked up.
+     * @param givenSetKeys
+     *                        the properties that were set.
+     */
+    AccessStatistics(final Map<String, Long> givenCounts,
+            final Set<String> givenSetKeys) {
+        counts = Collections.unmodifiableMap(givenCounts);
+        setKeys = Collections.unmodifiableSet(givenSetKeys);
+    }
+
+    /**
+     * Getter for how often a property was looked up.
+     *
+     * @param key
+     *                the name of the property.
+     * @return the number of lookups.
+     */
+    public long getCount(final String key) {
+        Long count = this.counts.get(key);
+        if (count == null) {
+            return 0;
+        }
+        return count;
+    }
+
+    /**
+     * Getter for how often every property was looked up.
+     *
+     * @return an unmodifiable map from property names to numbers of lookups,
+     *         including properties that were looked up but are not set.
+     */
+    public Map<String, Long> getCounts() {
+        return this.counts;
+    }
+
+    /**
+     * Find the properties that were looked up most often.
+     *
+     * @param limit
+     *                  the most properties to give back.
+     * @return the properties that were looked up at least once, most often
+     *         first, with ties in name order.
+     */
+    public List<String> getHotKeys(final int limit) {
+        List<String> hot = new ArrayList<String>();
+        for (Map.Entry<String, Long> entry : this.counts.entrySet()) {
+            if (entry.getValue() > 0) {
+                hot.add(entry.getKey());
+            }
+        }
+        hot.sort(Comparator.comparing((String key) -> this.counts.get(key))
+                .reversed().thenComparing(Comparator.naturalOrder()));
+        if (hot.size() > limit) {
+            return List.copyOf(hot.subList(0, limit));
+        }
+        return List.copyOf(hot);
+    }
+
+    /**
+     * Find the properties that are set but were never looked up. These are
+     * the ones that might be dropped from the configuration.
+     *
+     * @return the unread properties, in name order.
+     */
+    public Set<String> getUnreadKeys() {
+        Set<String> unread = new TreeSet<String>();
+        for (String key : this.setKeys) {
+            if (getCount(key) == 0) {
+                unread.add(key);
+            }
+        }
+        return Collections.unmodifiableSet(unread);
+    }
+
+    /**
+     * Find the properties that were looked up but are not set.
+     *
+     * @return the missing properties, in name order.
+     */
+    public Set<String> getMissingKeys() {
+        Set<String> missing = new TreeSet<String>();
+        for (Map.Entry<String, Long> entry : this.counts.entrySet()) {
+            if (entry.getValue() > 0
+                    && !this.setKeys.contains(entry.getKey())) {
+                missing.add(entry.getKey());
+            }
+        }
+        return Collections.unmodifiableSet(missing);
+    }
+}
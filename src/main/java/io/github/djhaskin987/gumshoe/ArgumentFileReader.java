@@ -0,0 +1,160 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits an argument file into command line arguments, one at a time, so that
+ * even a very large file never has to be held in memory all at once.
+ *
+ * The file is read as UTF-8. Arguments are separated by whitespace. Text in
+ * single quotes is taken as it is; text in double quotes may hold whitespace
+ * and backslash escapes. Outside of single quotes, a backslash takes the next
+ * character as it is. Quoted and unquoted text next to each other make up one
+ * argument, and <code>""</code> is an empty argument. An argument starting
+ * with an unquoted <code>#</code> starts a comment, which runs to the end of
+ * the line.
+ */
+final class ArgumentFileReader implements ArgumentSource, Closeable {
+
+    /**
+     * How many characters are read from the file at once.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Marks the end of the file.
+     */
+    private static final int END = -1;
+
+    /**
+     * The file being read.
+     */
+    private final Reader reader;
+
+    /**
+     * The characters most recently read from the file.
+     */
+    private final char[] buffer;
+
+    /**
+     * How many characters in <code>buffer</code> are valid.
+     */
+    private int limit;
+
+    /**
+     * The position of the next character in <code>buffer</code>.
+     */
+    private int position;
+
+    /**
+     * Constructor for the ArgumentFileReader class.
+     *
+     * @param input
+     *                  the argument file.
+     */
+    ArgumentFileReader(final InputStream input) {
+        reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+        buffer = new char[BUFFER_SIZE];
+        limit = 0;
+        position = 0;
+    }
+
+    /**
+     * Read the next character from the file.
+     *
+     * @return the next character, or <code>END</code> at the end of the file.
+     * @throws IOException
+     *                         thrown if the file could not be read.
+     */
+    private int read() throws IOException {
+        if (position >= limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return END;
+            }
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Read the next argument from the file.
+     *
+     * @return the next argument, or <code>null</code> at the end of the file.
+     * @throws IOException
+     *                         thrown if the file could not be read, or if a
+     *                         quote is left open at the end of the file.
+     */
+    @Override
+    public String next() throws IOException {
+        int c = read();
+        while (true) {
+            while (c != END && Character.isWhitespace(c)) {
+                c = read();
+            }
+            if (c != '#') {
+                break;
+            }
+            while (c != END && c != '\n' && c != '\r') {
+                c = read();
+            }
+        }
+        if (c == END) {
+            return null;
+        }
+        StringBuilder argument = new StringBuilder();
+        while (c != END && !Character.isWhitespace(c)) {
+            if (c == '\'') {
+                c = read();
+                while (c != '\'') {
+                    if (c == END) {
+                        throw new IOException("Unterminated quote in "
+                                + "argument file.");
+                    }
+                    argument.append((char) c);
+                    c = read();
+                }
+            } else if (c == '"') {
+                c = read();
+                while (c != '"') {
+                    if (c == '\\') {
+                        c = read();
+                    }
+                    if (c == END) {
+                        throw new IOException("Unterminated quote in "
+                                + "argument file.");
+                    }
+                    argument.append((char) c);
+                    c = read();
+                }
+            } else if (c == '\\') {
+                c = read();
+                if (c == END) {
+                    break;
+                }
+                argument.append((char) c);
+            } else {
+                argument.append((char) c);
+            }
+            c = read();
+        }
+        return argument.toString();
+    }
+
+    /**
+     * Close the file.
+     *
+     * @throws IOException
+     *                         thrown if the file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
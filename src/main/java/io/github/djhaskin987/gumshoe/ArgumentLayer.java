@@ -0,0 +1,248 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * What the command line arguments do to the gathered options.
+ *
+ * An argument layer either applies each operation to a properties object
+ * straight away, which is what a plain gather does, or records the operations
+ * so that they can be replayed later on top of any properties object. The
+ * second kind is what lets <code>GumshoeLayers</code> merge the arguments
+ * again without parsing them again.
+ *
+ * Adding to a secret property is refused, since the added value could only
+ * be joined to the secret by reading it and storing the result in the clear.
+ */
+final class ArgumentLayer {
+
+    /**
+     * One operation from the command line.
+     */
+    private static final class Operation {
+        /**
+         * Whether the operation adds to the property rather than setting it.
+         */
+        private final boolean add;
+        /**
+         * The property operated on.
+         */
+        private final String property;
+        /**
+         * The value, or <code>null</code> if the property is removed.
+         */
+        private final String value;
+
+        /**
+         * Constructor for the Operation class.
+         *
+         * @param givenAdd
+         *                          whether the operation adds to the property.
+         * @param givenProperty
+         *                          the property operated on.
+         * @param givenValue
+         *                          the value, or <code>null</code> if the
+         *                          property is removed.
+         */
+        Operation(final boolean givenAdd, final String givenProperty,
+                final String givenValue) {
+            add = givenAdd;
+            property = givenProperty;
+            value = givenValue;
+        }
+    }
+
+    /**
+     * The properties object operations are applied to, or <code>null</code>
+     * if they are recorded.
+     */
+    private final Properties target;
+
+    /**
+     * The recorded operations, in order.
+     */
+    private final List<Operation> operations;
+
+    /**
+     * The arguments Gumshoe did not use.
+     */
+    private final List<String> unusedArguments;
+
+    /**
+     * The properties operated on.
+     */
+    private final Set<String> touched;
+
+    /**
+     * Constructor for the ArgumentLayer class.
+     *
+     * @param givenTarget
+     *                        the properties object operations are applied to,
+     *                        or <code>null</code> if they are recorded.
+     */
+    private ArgumentLayer(final Properties givenTarget) {
+        target = givenTarget;
+        operations = new ArrayList<Operation>();
+        unusedArguments = new ArrayList<String>();
+        touched = new HashSet<String>();
+    }
+
+    /**
+     * Make an argument layer that applies operations to <code>results</code>
+     * as they come.
+     *
+     * @param results
+     *                    the properties object being built.
+     * @return a new ArgumentLayer.
+     */
+    static ArgumentLayer applyingTo(final Properties results) {
+        return new ArgumentLayer(results);
+    }
+
+    /**
+     * Make an argument layer that records operations to be replayed later.
+     *
+     * @return a new ArgumentLayer.
+     */
+    static ArgumentLayer recording() {
+        return new ArgumentLayer(null);
+    }
+
+    /**
+     * Apply an operation to a properties object, unless it adds to a secret.
+     *
+     * @param results
+     *                      the properties object.
+     * @param operation
+     *                      the operation.
+     * @return whether or not the operation was applied.
+     */
+    private static boolean apply(final Properties results,
+            final Operation operation) {
+        if (operation.add && results instanceof SecretProperties
+                && ((SecretProperties) results)
+                        .isSecret(operation.property)) {
+            return false;
+        }
+        if (operation.value == null) {
+            results.remove(operation.property);
+        } else if (operation.add) {
+            String priorProperty = results.getProperty(operation.property);
+            if (priorProperty == null) {
+                results.setProperty(operation.property, operation.value);
+            } else {
+                results.setProperty(operation.property,
+                        String.join(",", priorProperty, operation.value));
+            }
+        } else {
+            results.setProperty(operation.property, operation.value);
+        }
+        return true;
+    }
+
+    /**
+     * Apply or record an operation.
+     *
+     * @param operation
+     *                      the operation.
+     * @return whether or not the operation was recorded or applied; it is
+     *         not applied if it adds to a secret.
+     */
+    private boolean perform(final Operation operation) {
+        touched.add(operation.property);
+        if (target == null) {
+            operations.add(operation);
+            return true;
+        }
+        return apply(target, operation);
+    }
+
+    /**
+     * Set a property.
+     *
+     * @param property
+     *                     the property.
+     * @param value
+     *                     its new value.
+     */
+    void set(final String property, final String value) {
+        perform(new Operation(false, property, value));
+    }
+
+    /**
+     * Add a value to a property, separated from any value it already has by
+     * a comma.
+     *
+     * @param property
+     *                     the property.
+     * @param value
+     *                     the value to add.
+     * @return whether or not the value was recorded or added; it is not
+     *         added if the property is a secret.
+     */
+    boolean add(final String property, final String value) {
+        return perform(new Operation(true, property, value));
+    }
+
+    /**
+     * Remove a property.
+     *
+     * @param property
+     *                     the property.
+     */
+    void reset(final String property) {
+        perform(new Operation(false, property, null));
+    }
+
+    /**
+     * Note an argument that Gumshoe did not use.
+     *
+     * @param argument
+     *                     the argument.
+     */
+    void unused(final String argument) {
+        unusedArguments.add(argument);
+    }
+
+    /**
+     * Getter for the arguments Gumshoe did not use.
+     *
+     * @return the unused arguments, which must not be changed.
+     */
+    List<String> getUnusedArguments() {
+        return this.unusedArguments;
+    }
+
+    /**
+     * Check whether the command line operated on a property.
+     *
+     * @param property
+     *                     the property.
+     * @return whether or not the property was set, added to or reset.
+     */
+    boolean touches(final String property) {
+        return touched.contains(property);
+    }
+
+    /**
+     * Replay the recorded operations, in order, on a properties object,
+     * stopping at any that adds to a secret.
+     *
+     * @param results
+     *                    the properties object.
+     * @return the secret property that an operation added to, or
+     *         <code>null</code> if every operation was applied.
+     */
+    String replay(final Properties results) {
+        for (Operation operation : operations) {
+            if (!apply(results, operation)) {
+                return operation.property;
+            }
+        }
+        return null;
+    }
+}
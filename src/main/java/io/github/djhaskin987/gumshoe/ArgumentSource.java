@@ -0,0 +1,17 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.io.IOException;
+
+/**
+ * A source of command line arguments, read one at a time.
+ */
+interface ArgumentSource {
+    /**
+     * Read the next argument.
+     *
+     * @return the next argument, or <code>null</code> if there are no more.
+     * @throws IOException
+     *                         thrown if the arguments could not be read.
+     */
+    String next() throws IOException;
+}
@@ -0,0 +1,492 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * An immutable, compact store for a merged set of options.
+ *
+ * All keys and values are held as UTF-8 in one contiguous byte arena, which
+ * may live on the heap or off of it in a direct <code>ByteBuffer</code>. Each
+ * entry in the arena is laid out as the key length, the value length, the key
+ * bytes and then the value bytes. Entries are found through an open-addressed
+ * table of <code>int</code> offsets into the arena. Strings are only created
+ * when a key or value is actually asked for.
+ *
+ * This is meant for very large configurations, where a
+ * <code>java.util.Properties</code> object costs several times the size of the
+ * raw text.
+ *
+ * Secrets from a <code>SecretProperties</code> object stay secret: the arena
+ * holds <code>SecretProperties.REDACTED</code> for them, along with the path
+ * of each secret file, which is only read when the secret is looked up with
+ * <code>getProperty</code>.
+ *
+ * @since 1.1.0
+ */
+public final class CompactProperties {
+
+    /**
+     * Marks an empty slot in the index.
+     */
+    private static final int EMPTY = -1;
+
+    /**
+     * The number of bytes used to store the length of a key or of a value.
+     */
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    /**
+     * The index is kept at most half full.
+     */
+    private static final int LOAD_FACTOR_INVERSE = 2;
+
+    /**
+     * The smallest index size allowed.
+     */
+    private static final int MINIMUM_CAPACITY = 2;
+
+    /**
+     * The byte arena holding every key and value.
+     */
+    private final ByteBuffer arena;
+
+    /**
+     * Open-addressed index of entry offsets into the arena.
+     */
+    private final int[] slots;
+
+    /**
+     * The hash of each entry's key, parallel to <code>slots</code>.
+     */
+    private final int[] hashes;
+
+    /**
+     * The number of entries stored.
+     */
+    private final int size;
+
+    /**
+     * Reads secret files, or <code>null</code> if there are no secrets.
+     */
+    private final SecretResolver resolver;
+
+    /**
+     * The secret file behind each secret property.
+     */
+    private final Map<String, String> secretPaths;
+
+    /**
+     * Constructor for the <code>CompactProperties</code> class.
+     *
+     * @param givenArena
+     *                         the filled byte arena.
+     * @param givenSlots
+     *                         the index of entry offsets.
+     * @param givenHashes
+     *                         the key hashes, parallel to the slots.
+     * @param givenSize
+     *                         the number of entries.
+     * @param givenResolver
+     *                         reads secret files, or <code>null</code>.
+     * @param givenSecretPaths
+     *                         the secret file behind each secret property.
+     */
+    private CompactProperties(final ByteBuffer givenArena,
+            final int[] givenSlots, final int[] givenHashes,
+            final int givenSize, final SecretResolver givenResolver,
+            final Map<String, String> givenSecretPaths) {
+        arena = givenArena;
+        slots = givenSlots;
+        hashes = givenHashes;
+        size = givenSize;
+        resolver = givenResolver;
+        secretPaths = givenSecretPaths;
+    }
+
+    /**
+     * Build a compact copy of the given properties object. Only entries whose
+     * keys and values are both strings are copied, just as
+     * <code>Properties.stringPropertyNames</code> would see them; defaults are
+     * not included. Values are copied as they are stored, so secrets in a
+     * <code>SecretProperties</code> object are not read, but are kept as
+     * references to their secret files.
+     *
+     * @param properties
+     *                       the properties to copy.
+     * @param offHeap
+     *                       whether the arena should be allocated outside of
+     *                       the Java heap.
+     * @return a new <code>CompactProperties</code> instance.
+     */
+    public static CompactProperties fromProperties(final Properties properties,
+            final boolean offHeap) {
+        byte[][] keys = new byte[properties.size()][];
+        byte[][] values = new byte[properties.size()][];
+        int count = 0;
+        long total = 0;
+        for (Object key : properties.keySet()) {
+            if (key instanceof String
+                    && properties.get(key) instanceof String) {
+                keys[count] = ((String) key).getBytes(StandardCharsets.UTF_8);
+                values[count] = ((String) properties.get(key))
+                        .getBytes(StandardCharsets.UTF_8);
+                total += LENGTH_BYTES + LENGTH_BYTES + keys[count].length
+                        + values[count].length;
+                count++;
+            }
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Properties are too large to store compactly.");
+        }
+        ByteBuffer arena;
+        if (offHeap) {
+            arena = ByteBuffer.allocateDirect((int) total);
+        } else {
+            arena = ByteBuffer.allocate((int) total);
+        }
+        int capacity = Integer.highestOneBit(Math.max(MINIMUM_CAPACITY,
+                count * LOAD_FACTOR_INVERSE) - 1) << 1;
+        int[] slots = new int[capacity];
+        int[] hashes = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        for (int i = 0; i < count; i++) {
+            int offset = arena.position();
+            arena.putInt(keys[i].length);
+            arena.putInt(values[i].length);
+            arena.put(keys[i]);
+            arena.put(values[i]);
+            int hash = hashBytes(keys[i]);
+            int slot = hash & (capacity - 1);
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            slots[slot] = offset;
+            hashes[slot] = hash;
+        }
+        SecretResolver resolver = null;
+        Map<String, String> secretPaths = Collections.emptyMap();
+        if (properties instanceof SecretProperties) {
+            SecretProperties secrets = (SecretProperties) properties;
+            secretPaths = secrets.getSecretPaths();
+            if (!secretPaths.isEmpty()) {
+                resolver = secrets.getResolver();
+            }
+        }
+        return new CompactProperties(arena, slots, hashes, count, resolver,
+                secretPaths);
+    }
+
+    /**
+     * Copy this object into a new arena, on or off the heap.
+     *
+     * @param offHeap
+     *                    whether the new arena should be allocated outside of
+     *                    the Java heap.
+     * @return a new <code>CompactProperties</code> instance.
+     */
+    CompactProperties copy(final boolean offHeap) {
+        ByteBuffer copied;
+        if (offHeap) {
+            copied = ByteBuffer.allocateDirect(arena.capacity());
+        } else {
+            copied = ByteBuffer.allocate(arena.capacity());
+        }
+        copied.put(arena.duplicate().clear());
+        return new CompactProperties(copied, slots, hashes, size, resolver,
+                secretPaths);
+    }
+
+    /**
+     * Hash a UTF-8 encoded key.
+     *
+     * @param bytes
+     *                  the key bytes.
+     * @return the hash of the key.
+     */
+    private static int hashBytes(final byte[] bytes) {
+        int hash = Arrays.hashCode(bytes);
+        return hash ^ (hash >>> (Integer.SIZE / 2));
+    }
+
+    /**
+     * Find the arena offset of the entry with the given key.
+     *
+     * @param key
+     *                the key to look for.
+     * @return the offset of the entry, or <code>EMPTY</code> if it is not
+     *         present.
+     */
+    private int find(final String key) {
+        byte[] wanted = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hashBytes(wanted);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != EMPTY) {
+            if (hashes[slot] == hash && keyEquals(slots[slot], wanted)) {
+                return slots[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Compare the key of the entry at <code>offset</code> to the given bytes.
+     *
+     * @param offset
+     *                   the offset of the entry in the arena.
+     * @param wanted
+     *                   the UTF-8 bytes of the key to compare against.
+     * @return whether or not the keys are equal.
+     */
+    private boolean keyEquals(final int offset, final byte[] wanted) {
+        if (arena.getInt(offset) != wanted.length) {
+            return false;
+        }
+        int start = offset + LENGTH_BYTES + LENGTH_BYTES;
+        for (int i = 0; i < wanted.length; i++) {
+            if (arena.get(start + i) != wanted[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode a UTF-8 string out of the arena.
+     *
+     * @param start
+     *                   where the string's bytes start.
+     * @param length
+     *                   how many bytes the string takes up.
+     * @return the decoded string.
+     */
+    private String decode(final int start, final int length) {
+        byte[] bytes = new byte[length];
+        arena.duplicate().position(start).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decode the key of the entry at <code>offset</code>.
+     *
+     * @param offset
+     *                   the offset of the entry in the arena.
+     * @return the key.
+     */
+    private String keyAt(final int offset) {
+        return decode(offset + LENGTH_BYTES + LENGTH_BYTES,
+                arena.getInt(offset));
+    }
+
+    /**
+     * Find where the entry after the one at <code>offset</code> starts.
+     *
+     * @param offset
+     *                   the offset of the entry in the arena.
+     * @return the offset of the next entry, which is the size of the arena
+     *         if this is the last entry.
+     */
+    private int nextOffset(final int offset) {
+        return offset + LENGTH_BYTES + LENGTH_BYTES + arena.getInt(offset)
+                + arena.getInt(offset + LENGTH_BYTES);
+    }
+
+    /**
+     * Decode the value of the entry at <code>offset</code>.
+     *
+     * @param offset
+     *                   the offset of the entry in the arena.
+     * @return the value.
+     */
+    private String valueAt(final int offset) {
+        int keyLength = arena.getInt(offset);
+        return decode(offset + LENGTH_BYTES + LENGTH_BYTES + keyLength,
+                arena.getInt(offset + LENGTH_BYTES));
+    }
+
+    /**
+     * Look up the value of a property.
+     *
+     * @param key
+     *                the name of the property.
+     * @return the value of the property, or <code>null</code> if it is not
+     *         present.
+     */
+    public String getProperty(final String key) {
+        String path = secretPaths.get(key);
+        if (path != null) {
+            try {
+                return resolver.resolve(path);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(
+                        "Could not read the secret for " + key, ioe);
+            }
+        }
+        return getStored(key);
+    }
+
+    /**
+     * Look up the value of a property as it is stored, without reading any
+     * secret file.
+     *
+     * @param key
+     *                the name of the property.
+     * @return the value of the property, which is
+     *         <code>SecretProperties.REDACTED</code> for secrets, or
+     *         <code>null</code> if it is not present.
+     */
+    String getStored(final String key) {
+        int offset = find(key);
+        if (offset == EMPTY) {
+            return null;
+        }
+        return valueAt(offset);
+    }
+
+    /**
+     * Look up the value of a property, falling back to a default.
+     *
+     * @param key
+     *                         the name of the property.
+     * @param defaultValue
+     *                         what to return if the property is not present.
+     * @return the value of the property, or <code>defaultValue</code>.
+     */
+    public String getProperty(final String key, final String defaultValue) {
+        String value = getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * Check whether a property is present.
+     *
+     * @param key
+     *                the name of the property.
+     * @return whether or not it is present.
+     */
+    public boolean containsKey(final String key) {
+        return find(key) != EMPTY;
+    }
+
+    /**
+     * Getter for the number of properties stored.
+     *
+     * @return the number of properties.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter for the number of bytes the arena takes up.
+     *
+     * @return the size of the arena in bytes.
+     */
+    public int arenaSize() {
+        return arena.capacity();
+    }
+
+    /**
+     * Check whether the arena is allocated outside of the Java heap.
+     *
+     * @return whether or not the arena is off the heap.
+     */
+    public boolean isOffHeap() {
+        return arena.isDirect();
+    }
+
+    /**
+     * List the names of all stored properties, in storage order.
+     *
+     * @return an unmodifiable set of property names.
+     */
+    public Set<String> stringPropertyNames() {
+        Set<String> names = new LinkedHashSet<String>();
+        int offset = 0;
+        while (offset < arena.capacity()) {
+            names.add(keyAt(offset));
+            offset = nextOffset(offset);
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Getter for the secret file behind each secret property.
+     *
+     * @return the secret files, by property name, which must not be changed.
+     */
+    Map<String, String> getSecretPaths() {
+        return this.secretPaths;
+    }
+
+    /**
+     * Materialize all stored entries into a new, ordinary
+     * <code>Properties</code> object. If there are secrets, it is a
+     * <code>SecretProperties</code> object that still reads them only when
+     * they are looked up.
+     *
+     * @return a new <code>Properties</code> object.
+     */
+    public Properties toProperties() {
+        Properties result;
+        if (resolver == null) {
+            result = new Properties();
+        } else {
+            result = new SecretProperties(resolver);
+        }
+        int offset = 0;
+        while (offset < arena.capacity()) {
+            result.setProperty(keyAt(offset), valueAt(offset));
+            offset = nextOffset(offset);
+        }
+        for (Map.Entry<String, String> secret : secretPaths.entrySet()) {
+            ((SecretProperties) result).setSecret(secret.getKey(),
+                    secret.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Iterate over all stored entries, in storage order. Each key and value
+     * is only decoded when its entry is reached.
+     *
+     * @return an iterator over the entries, which cannot remove them.
+     */
+    Iterator<Map.Entry<String, String>> entryIterator() {
+        return new Iterator<Map.Entry<String, String>>() {
+            private int offset = 0;
+
+            public boolean hasNext() {
+                return offset < arena.capacity();
+            }
+
+            public Map.Entry<String, String> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, String> entry;
+                entry = new AbstractMap.SimpleImmutableEntry<String, String>(
+                        keyAt(offset), valueAt(offset));
+                offset = nextOffset(offset);
+                return entry;
+            }
+        };
+    }
+}
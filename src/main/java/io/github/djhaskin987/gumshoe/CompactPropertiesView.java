@@ -0,0 +1,405 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A read-only <code>Properties</code> view of a
+ * <code>CompactProperties</code> object, which is what
+ * <code>GumshoeReturn.getOptionsMap</code> gives back for options held in
+ * compact storage.
+ *
+ * The view keeps nothing of its own: every lookup goes to the arena, and
+ * iterating decodes one entry at a time, so the options are never copied back
+ * into a hash table. Every method that would change the options throws
+ * <code>UnsupportedOperationException</code>. Cloning or serializing the view
+ * makes an ordinary <code>Properties</code> copy.
+ */
+final class CompactPropertiesView extends Properties {
+
+    /**
+     * Included to avoid compiler errors.
+     */
+    private static final long serialVersionUID = 2913170375925484370L;
+
+    /**
+     * The compact storage being viewed.
+     */
+    private final transient CompactProperties compact;
+
+    /**
+     * The compact storage seen as a map, which the methods inherited from
+     * <code>Hashtable</code> are answered from.
+     */
+    private final transient Map<Object, Object> entries;
+
+    /**
+     * Constructor for the CompactPropertiesView class.
+     *
+     * @param givenCompact
+     *                         the compact storage to view.
+     */
+    CompactPropertiesView(final CompactProperties givenCompact) {
+        compact = givenCompact;
+        entries = new AbstractMap<Object, Object>() {
+            public Set<Map.Entry<Object, Object>> entrySet() {
+                return new AbstractSet<Map.Entry<Object, Object>>() {
+                    public Iterator<Map.Entry<Object, Object>> iterator() {
+                        final Iterator<Map.Entry<String, String>> stored =
+                                compact.entryIterator();
+                        return new Iterator<Map.Entry<Object, Object>>() {
+                            public boolean hasNext() {
+                                return stored.hasNext();
+                            }
+
+                            public Map.Entry<Object, Object> next() {
+                                Map.Entry<String, String> entry;
+                                entry = stored.next();
+                                return new SimpleImmutableEntry<Object,
+                                        Object>(entry.getKey(),
+                                                entry.getValue());
+                            }
+                        };
+                    }
+
+                    public int size() {
+                        return compact.size();
+                    }
+                };
+            }
+
+            public Object get(final Object key) {
+                return CompactPropertiesView.this.get(key);
+            }
+
+            public boolean containsKey(final Object key) {
+                return CompactPropertiesView.this.containsKey(key);
+            }
+
+            public int size() {
+                return compact.size();
+            }
+        };
+    }
+
+    /**
+     * Getter for the secret file behind each secret property.
+     *
+     * @return the secret files, by property name, which must not be changed.
+     */
+    Map<String, String> getSecretPaths() {
+        return compact.getSecretPaths();
+    }
+
+    /**
+     * Make the exception that every method that would change the options
+     * throws.
+     *
+     * @return the exception.
+     */
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException(
+                "Options held in compact storage cannot be changed.");
+    }
+
+    /**
+     * Look up a property in the arena, reading its secret file if it has
+     * one.
+     */
+    @Override
+    public String getProperty(final String key) {
+        return compact.getProperty(key);
+    }
+
+    /**
+     * Look up a property in the arena, as it is stored, so that secrets stay
+     * redacted.
+     */
+    @Override
+    public Object get(final Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        return compact.getStored((String) key);
+    }
+
+    /**
+     * Look up a property in the arena, falling back to a default.
+     */
+    @Override
+    public Object getOrDefault(final Object key, final Object defaultValue) {
+        Object value = get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * Check whether a property is in the arena.
+     */
+    @Override
+    public boolean containsKey(final Object key) {
+        return key instanceof String && compact.containsKey((String) key);
+    }
+
+    /**
+     * Check whether any property has a value, by going through them all.
+     */
+    @Override
+    public boolean containsValue(final Object value) {
+        return entries.containsValue(value);
+    }
+
+    /**
+     * Check whether any property has a value, by going through them all.
+     */
+    @Override
+    public boolean contains(final Object value) {
+        return containsValue(value);
+    }
+
+    /**
+     * Getter for the number of properties.
+     */
+    @Override
+    public int size() {
+        return compact.size();
+    }
+
+    /**
+     * Check whether there are no properties.
+     */
+    @Override
+    public boolean isEmpty() {
+        return compact.size() == 0;
+    }
+
+    /**
+     * List the property names.
+     */
+    @Override
+    public Enumeration<Object> keys() {
+        return Collections.enumeration(entries.keySet());
+    }
+
+    /**
+     * List the property values.
+     */
+    @Override
+    public Enumeration<Object> elements() {
+        return Collections.enumeration(entries.values());
+    }
+
+    /**
+     * List the property names.
+     */
+    @Override
+    public Enumeration<?> propertyNames() {
+        return Collections.enumeration(compact.stringPropertyNames());
+    }
+
+    /**
+     * List the property names.
+     */
+    @Override
+    public Set<String> stringPropertyNames() {
+        return compact.stringPropertyNames();
+    }
+
+    /**
+     * View the property names, read-only.
+     */
+    @Override
+    public Set<Object> keySet() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * View the property values, read-only.
+     */
+    @Override
+    public Collection<Object> values() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * View the properties, read-only.
+     */
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet() {
+        return Collections.unmodifiableSet(entries.entrySet());
+    }
+
+    /**
+     * Go through every property.
+     */
+    @Override
+    public void forEach(
+            final BiConsumer<? super Object, ? super Object> action) {
+        entries.forEach(action);
+    }
+
+    /**
+     * Compare with another map, entry by entry.
+     */
+    @Override
+    public boolean equals(final Object other) {
+        return other == this || entries.equals(other);
+    }
+
+    /**
+     * Hash the properties as any map would.
+     */
+    @Override
+    public int hashCode() {
+        return entries.hashCode();
+    }
+
+    /**
+     * Print the properties as any map would.
+     */
+    @Override
+    public String toString() {
+        return entries.toString();
+    }
+
+    /**
+     * Make an ordinary, changeable copy of the options.
+     *
+     * @return a new <code>Properties</code> object.
+     */
+    @Override
+    public Object clone() {
+        return compact.toProperties();
+    }
+
+    /**
+     * Serialize an ordinary copy of the options in place of the view.
+     *
+     * @return a new <code>Properties</code> object.
+     */
+    private Object writeReplace() {
+        return compact.toProperties();
+    }
+
+    /**
+     * Refuse to set a property.
+     */
+    @Override
+    public Object put(final Object key, final Object value) {
+        throw readOnly();
+    }
+
+    /**
+     * Refuse to set properties.
+     */
+    @Override
+    public void putAll(final Map<?, ?> t) {
+        throw readOnly();
+    }
+
+    /**
+     * Refuse to remove a property.
+     */
+    @Override
+    public Object remove(final Object key) {
+        throw readOnly();
+    }
+
+    /**
+     * Refuse to remove a property.
+     */
+    @Override
+    public boolean remove(final Object key, final Object value) {
+        throw readOnly();
+    }
+
+    /**
+     * Refuse to remove the properties.
+     */
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    /**
+     * Refuse to set a property.
+     */
+    @Override
+    public Object putIfAbsent(final Object key, final Object value) {
+        throw readOnly();
+    }
+
+    /**
+     * Refuse to set a property.
+     */
+    @Override
+    public Object replace(final Object key, final Object value) {
+        throw readOnly();
+    }
+
+    /**
+     * Refuse to set a property.
+     */
+    @Override
+    public boolean replace(final Object key, final Object oldValue,
+            final Object newValue) {
+        throw readOnly();
+    }
+
+    /**
+     * Refuse to set the properties.
+     */
+    @Override
+    public void replaceAll(
+            final BiFunction<? super Object, ? super Object, ?> function) {
+        throw readOnly();
+    }
+
+    /**
+     * Refuse to set a property.
+     */
+    @Override
+    public Object computeIfAbsent(final Object key,
+            final Function<? super Object, ?> function) {
+        throw readOnly();
+    }
+
+    /**
+     * Refuse to set a property.
+     */
+    @Override
+    public Object computeIfPresent(final Object key,
+            final BiFunction<? super Object, ? super Object, ?> function) {
+        throw readOnly();
+    }
+
+    /**
+     * Refuse to set a property.
+     */
+    @Override
+    public Object compute(final Object key,
+            final BiFunction<? super Object, ? super Object, ?> function) {
+        throw readOnly();
+    }
+
+    /**
+     * Refuse to set a property.
+     */
+    @Override
+    public Object merge(final Object key, final Object value,
+            final BiFunction<? super Object, ? super Object, ?> function) {
+        throw readOnly();
+    }
+}
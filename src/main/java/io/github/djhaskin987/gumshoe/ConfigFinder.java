@@ -2,6 +2,8 @@ package io.github.djhaskin987.gumshoe;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * This class is intended to be used for dependency injection purposes and test
@@ -27,4 +29,48 @@ public interface ConfigFinder {
      *                         thrown if the file could not be opened.
      */
     InputStream getInputStream(String path) throws IOException;
+
+    /**
+     * List the files in a directory whose names end with
+     * <code>extension</code>. The directory is read once, and is not
+     * searched recursively.
+     *
+     * The default implementation finds nothing, for ConfigFinders written
+     * before directory listing was supported.
+     *
+     * @param directory
+     *                      the path of the directory to list.
+     * @param extension
+     *                      the ending, such as <code>.properties</code>, that
+     *                      file names must have.
+     * @return the paths of the files found, in no particular order, or an
+     *         empty list if the directory does not exist.
+     * @throws IOException
+     *                         thrown if the directory exists but could not be
+     *                         read.
+     * @since 1.1.0
+     */
+    default List<String> listFiles(final String directory,
+            final String extension)
+            throws IOException {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Find when a file or directory was last modified. Gumshoe uses this to
+     * avoid reading configuration files and directories that have not changed
+     * since it last read them.
+     *
+     * The default implementation returns <code>-1</code>, meaning that
+     * nothing is ever cached.
+     *
+     * @param path
+     *                 the path of the file or directory.
+     * @return the time it was last modified, in milliseconds since the epoch,
+     *         or <code>-1</code> if this is unknown.
+     * @since 1.1.0
+     */
+    default long lastModified(final String path) {
+        return -1;
+    }
 }
@@ -0,0 +1,54 @@
+package io.github.djhaskin987.gumshoe;
+
+/**
+ * A place where Gumshoe looks for configuration: a configuration file, and,
+ * for the default locations, a <code>config.d</code> directory of fragments
+ * next to it.
+ */
+final class ConfigLocation {
+
+    /**
+     * The path of the configuration file.
+     */
+    private final String path;
+
+    /**
+     * The path of the fragment directory, or <code>null</code> if there is
+     * none.
+     */
+    private final String fragmentDirectory;
+
+    /**
+     * Constructor for the ConfigLocation class.
+     *
+     * @param givenPath
+     *                                   the path of the configuration file.
+     * @param givenFragmentDirectory
+     *                                   the path of the fragment directory,
+     *                                   or <code>null</code> if there is
+     *                                   none.
+     */
+    ConfigLocation(final String givenPath,
+            final String givenFragmentDirectory) {
+        path = givenPath;
+        fragmentDirectory = givenFragmentDirectory;
+    }
+
+    /**
+     * Getter for the path of the configuration file.
+     *
+     * @return the path.
+     */
+    String getPath() {
+        return this.path;
+    }
+
+    /**
+     * Getter for the path of the fragment directory.
+     *
+     * @return the path, or <code>null</code> if there is none.
+     */
+    String getFragmentDirectory() {
+        return this.fragmentDirectory;
+    }
+}
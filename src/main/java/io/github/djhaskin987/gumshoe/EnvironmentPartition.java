@@ -0,0 +1,185 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the environment, split up by program prefix so that finding a
+ * program's variables does not mean looking at every variable in the
+ * environment.
+ *
+ * Each variable is filed, as it is, under the part of its name before the
+ * first underscore. Nothing else is worked out until a program's variables
+ * are asked for, since most of the environment belongs to other programs;
+ * only then are property names lower-cased and dotted. The environment is
+ * treated as unchanging after the JVM starts, so a partition is built once
+ * for each environment map given to Gumshoe.
+ */
+final class EnvironmentPartition {
+
+    /**
+     * One environment variable belonging to a program.
+     */
+    static final class Variable {
+        /**
+         * The full name of the environment variable.
+         */
+        private final String name;
+        /**
+         * The part of the name after the program prefix and its underscore.
+         */
+        private final String suffix;
+        /**
+         * The property name the variable sets.
+         */
+        private final String propertyName;
+        /**
+         * The value of the environment variable.
+         */
+        private final String value;
+
+        /**
+         * Constructor for the Variable class.
+         *
+         * @param givenName
+         *                      the full name of the environment variable.
+         * @param givenSuffix
+         *                      the part of the name after the program prefix
+         *                      and its underscore.
+         * @param givenValue
+         *                      the value of the environment variable.
+         */
+        Variable(final String givenName, final String givenSuffix,
+                final String givenValue) {
+            name = givenName;
+            suffix = givenSuffix;
+            propertyName = givenSuffix.toLowerCase().replace('_', '.');
+            value = givenValue;
+        }
+
+        /**
+         * Getter for the full name of the environment variable.
+         *
+         * @return the name.
+         */
+        String getName() {
+            return this.name;
+        }
+
+        /**
+         * Getter for the part of the name after the program prefix.
+         *
+         * @return the suffix.
+         */
+        String getSuffix() {
+            return this.suffix;
+        }
+
+        /**
+         * Getter for the property name the variable sets.
+         *
+         * @return the lower-cased, dotted property name.
+         */
+        String getPropertyName() {
+            return this.propertyName;
+        }
+
+        /**
+         * Getter for the value of the environment variable.
+         *
+         * @return the value.
+         */
+        String getValue() {
+            return this.value;
+        }
+    }
+
+    /**
+     * Variables, as they are in the environment, by the part of their name
+     * before the first underscore.
+     */
+    private final Map<String, List<Map.Entry<String, String>>> partitions;
+
+    /**
+     * Build a partition of the given environment.
+     *
+     * @param environment
+     *                        the environment to partition.
+     */
+    EnvironmentPartition(final Map<String, String> environment) {
+        partitions = new HashMap<String, List<Map.Entry<String, String>>>();
+        for (Map.Entry<String, String> entry : environment.entrySet()) {
+            String name = entry.getKey();
+            int split = name.indexOf('_');
+            if (split < 0) {
+                continue;
+            }
+            String prefix = name.substring(0, split);
+            List<Map.Entry<String, String>> partition = partitions.get(prefix);
+            if (partition == null) {
+                partition = new ArrayList<Map.Entry<String, String>>();
+                partitions.put(prefix, partition);
+            }
+            partition.add(entry);
+        }
+    }
+
+    /**
+     * Check whether a name has a line terminator in it, from
+     * <code>start</code> onwards. Variables with such names are left out, as
+     * they never were picked up by Gumshoe.
+     *
+     * @param name
+     *                  the name.
+     * @param start
+     *                  where to start looking.
+     * @return whether or not there is a line terminator.
+     */
+    static boolean hasLineTerminator(final String name,
+            final int start) {
+        for (int i = start; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028'
+                    || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find all variables of the form <code>&lt;upperName&gt;_SUFFIX</code>.
+     *
+     * @param upperName
+     *                      the upper-cased program name.
+     * @return the program's variables.
+     */
+    List<Variable> slice(final String upperName) {
+        int split = upperName.indexOf('_');
+        String prefix = upperName;
+        String rest = "";
+        if (split >= 0) {
+            prefix = upperName.substring(0, split);
+            rest = upperName.substring(split + 1) + "_";
+        }
+        List<Map.Entry<String, String>> found = partitions.get(prefix);
+        if (found == null) {
+            return Collections.emptyList();
+        }
+        int start = prefix.length() + 1;
+        List<Variable> result = new ArrayList<Variable>();
+        for (Map.Entry<String, String> entry : found) {
+            String name = entry.getKey();
+            if (name.startsWith(rest, start)
+                    && !hasLineTerminator(name, start)) {
+                result.add(new Variable(name,
+                        name.substring(start + rest.length()),
+                        entry.getValue()));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
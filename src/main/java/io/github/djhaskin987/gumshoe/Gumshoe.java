@@ -3,15 +3,22 @@ package io.github.djhaskin987.gumshoe;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * This looks at configuration files, the environment, and the JVM properties in
@@ -32,6 +39,11 @@ public class Gumshoe {
          */
         private static final long serialVersionUID = 5197416338850699110L;
 
+        /**
+         * Everything found wrong with the gathered options.
+         */
+        private final List<String> violations;
+
         /**
          * Default constructor, allowing the user to specify a message for this
          * exception, simply calls <code>super</code> with it.
@@ -40,10 +52,63 @@ public class Gumshoe {
          *                    The message to be displayed with this exception.
          */
         public GumshoeException(final String message) {
+            this(message, List.of());
+        }
+
+        /**
+         * Constructor for an exception listing everything found wrong with
+         * the gathered options.
+         *
+         * @param message
+         *                            The message to be displayed with this
+         *                            exception.
+         * @param givenViolations
+         *                            what was found wrong, one line each.
+         */
+        public GumshoeException(final String message,
+                final List<String> givenViolations) {
             super(message);
+            violations = List.copyOf(givenViolations);
+        }
+
+        /**
+         * Getter for everything found wrong with the gathered options, when
+         * they did not meet the schema.
+         *
+         * @return the violations, one line each, or an empty list.
+         * @since 1.1.0
+         */
+        public List<String> getViolations() {
+            return this.violations;
         }
     }
 
+    /**
+     * Starts command line arguments of the form <code>--verb-property</code>.
+     */
+    private static final String ARGUMENT_PREFIX = "--";
+
+    /**
+     * The file name ending of configuration fragments.
+     */
+    private static final String FRAGMENT_EXTENSION = ".properties";
+
+    /**
+     * Fragment directories with at least this many fragments have them read
+     * in parallel.
+     */
+    private static final int PARALLEL_FRAGMENTS = 8;
+
+    /**
+     * The argument that is replaced by the arguments on standard input.
+     */
+    private static final String STDIN_ARGUMENT = "--options-from-stdin";
+
+    /**
+     * Ends the names of environment variables that name secret files.
+     */
+    private static final String SECRET_SUFFIX = "_FILE";
+
     /**
      * This is the normal way to create an instance of Gumshoe.
      *
@@ -52,7 +117,18 @@ public class Gumshoe {
      *         file system and system environment.
      */
     public static Gumshoe createDefaultInstance() {
-        return new Gumshoe(new ConfigFinder() {
+        return new Gumshoe(createDefaultFinder(), System.getProperties(),
+                System.getenv());
+    }
+
+    /**
+     * Create a ConfigFinder that looks at the real file system. It keeps no
+     * state, and so may be used from many threads at once.
+     *
+     * @return a new ConfigFinder.
+     */
+    private static ConfigFinder createDefaultFinder() {
+        return new ConfigFinder() {
             public boolean pathExists(final String path) {
                 return Files.exists(Path.of(path));
             }
@@ -61,24 +137,421 @@ public class Gumshoe {
                     throws IOException {
                 return Files.newInputStream(Path.of(path));
             }
-        }, System.getProperties(), System.getenv());
+
+            public List<String> listFiles(final String directory,
+                    final String extension) throws IOException {
+                List<String> found = new ArrayList<String>();
+                // A filter rather than a glob, which would compile a regex.
+                DirectoryStream.Filter<Path> filter;
+                filter = new DirectoryStream.Filter<Path>() {
+                    public boolean accept(final Path entry) {
+                        return entry.getFileName().toString()
+                                .endsWith(extension);
+                    }
+                };
+                try (DirectoryStream<Path> listing = Files
+                        .newDirectoryStream(Path.of(directory), filter)) {
+                    for (Path entry : listing) {
+                        if (Files.isRegularFile(entry)) {
+                            found.add(entry.toString());
+                        }
+                    }
+                } catch (NoSuchFileException | NotDirectoryException nsfe) {
+                    return Collections.emptyList();
+                }
+                return found;
+            }
+
+            public long lastModified(final String path) {
+                try {
+                    return Files.getLastModifiedTime(Path.of(path)).toMillis();
+                } catch (IOException ioe) {
+                    return -1;
+                }
+            }
+        };
+    }
+
+    /**
+     * Create a builder for a <code>PreparedGumshoe</code>, which does all the
+     * work that does not depend on the command line arguments once, up front,
+     * and may then be shared across threads.
+     *
+     * @return a new Builder.
+     * @since 1.1.0
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builds <code>PreparedGumshoe</code> instances. Unless told otherwise,
+     * the builder uses the real file system, the System properties and the
+     * System environment, just as <code>createDefaultInstance</code> does.
+     *
+     * @since 1.1.0
+     */
+    public static final class Builder {
+        /**
+         * The ConfigFinder to use.
+         */
+        private ConfigFinder finder;
+        /**
+         * The System properties to use.
+         */
+        private Properties systemProperties;
+        /**
+         * The environment to use.
+         */
+        private Map<String, String> environment;
+        /**
+         * The name of the program that is using Gumshoe.
+         */
+        private String programName;
+        /**
+         * The command line aliases to use.
+         */
+        private Map<String, String> aliases;
+        /**
+         * Whether <code>_FILE</code> environment variables name secret files.
+         */
+        private boolean secretFiles;
+        /**
+         * Whether argument files and standard input may hold arguments.
+         */
+        private boolean argumentFiles;
+        /**
+         * Where <code>--options-from-stdin</code> reads arguments from.
+         */
+        private InputStream standardInput;
+        /**
+         * The constraints gathered options must meet, if any.
+         */
+        private GumshoeSchema schema;
+        /**
+         * Where to import options from instead of discovering them, if
+         * anywhere.
+         */
+        private String importPath;
+        /**
+         * The property naming the active profile, if profiles are turned on.
+         */
+        private String profileKey;
+
+        /**
+         * Constructor for the Builder, only used by
+         * <code>Gumshoe.builder</code>.
+         */
+        private Builder() {
+            aliases = Map.of();
+        }
+
+        /**
+         * Set the name of the program that is using Gumshoe. This must be
+         * set.
+         *
+         * @param givenProgramName
+         *                             the name of the program.
+         * @return this builder.
+         */
+        public Builder programName(final String givenProgramName) {
+            programName = givenProgramName;
+            return this;
+        }
+
+        /**
+         * Set the command line aliases. See <code>gatherOptions</code>. The
+         * map is copied.
+         *
+         * @param givenAliases
+         *                         the aliases.
+         * @return this builder.
+         */
+        public Builder aliases(final Map<String, String> givenAliases) {
+            aliases = Map.copyOf(givenAliases);
+            return this;
+        }
+
+        /**
+         * Set the ConfigFinder used to find and open configuration files. It
+         * must be safe to use from many threads at once if the built instance
+         * is going to be shared.
+         *
+         * @param givenFinder
+         *                        the ConfigFinder.
+         * @return this builder.
+         */
+        public Builder configFinder(final ConfigFinder givenFinder) {
+            finder = givenFinder;
+            return this;
+        }
+
+        /**
+         * Set the System properties used to find configuration files. They
+         * are only read when <code>build</code> is called.
+         *
+         * @param givenSystemProperties
+         *                                  the System properties.
+         * @return this builder.
+         */
+        public Builder systemProperties(
+                final Properties givenSystemProperties) {
+            systemProperties = givenSystemProperties;
+            return this;
+        }
+
+        /**
+         * Set the environment. It must not be changed after it is given to
+         * the builder.
+         *
+         * @param givenEnvironment
+         *                             the environment.
+         * @return this builder.
+         */
+        public Builder environment(final Map<String, String> givenEnvironment) {
+            environment = givenEnvironment;
+            return this;
+        }
+
+        /**
+         * Turn on secret files. When on, an environment variable of the form
+         * <code>&lt;PROGRAMNAME&gt;_PROPERTY_NAME_FILE</code> names a file
+         * holding the value of <code>property.name</code>, instead of setting
+         * <code>property.name.file</code>. The file is not read when options
+         * are gathered, but only when the property is first looked up with
+         * <code>getProperty</code>; its contents are then remembered by the
+         * built instance. Everywhere else, such as when the options map is
+         * printed, the value shows up as
+         * <code>SecretProperties.REDACTED</code>. If
+         * <code>&lt;PROGRAMNAME&gt;_PROPERTY_NAME</code> is also set, it wins.
+         * The command line may set or reset a secret property, but adding to
+         * one with <code>--add-</code> is refused with a
+         * <code>GumshoeException</code>, as it would put the secret in the
+         * clear. Off by default.
+         *
+         * @param givenSecretFiles
+         *                             whether to turn secret files on.
+         * @return this builder.
+         */
+        public Builder secretFiles(final boolean givenSecretFiles) {
+            secretFiles = givenSecretFiles;
+            return this;
+        }
+
+        /**
+         * Turn on argument files. When on, a command line argument like
+         * <code>@path</code> is replaced by the arguments in the file at
+         * <code>path</code>, which is opened with the ConfigFinder, and the
+         * argument <code>--options-from-stdin</code> is replaced by the
+         * arguments on standard input. Either way, the arguments are read a
+         * few at a time as they are parsed, so files of any size may be used.
+         * Arguments in the file are separated by whitespace, may be quoted
+         * with single or double quotes, and an argument starting with
+         * <code>#</code> starts a comment that runs to the end of the line.
+         * Argument files may not name other argument files. Off by default.
+         *
+         * @param givenArgumentFiles
+         *                               whether to turn argument files on.
+         * @return this builder.
+         */
+        public Builder argumentFiles(final boolean givenArgumentFiles) {
+            argumentFiles = givenArgumentFiles;
+            return this;
+        }
+
+        /**
+         * Set where <code>--options-from-stdin</code> reads arguments from.
+         * Defaults to <code>System.in</code>. It is not closed, and as it can
+         * only be read once, it is claimed by the first gather that asks for
+         * it; every other gather, even one running at the same time on
+         * another thread, sees no arguments there.
+         *
+         * @param givenStandardInput
+         *                               the standard input.
+         * @return this builder.
+         */
+        public Builder standardInput(final InputStream givenStandardInput) {
+            standardInput = givenStandardInput;
+            return this;
+        }
+
+        /**
+         * Set the constraints gathered options must meet. Every gather then
+         * checks its options against the schema, and throws a
+         * <code>GumshoeException</code> listing every violation, with where
+         * each property came from, if any are found.
+         *
+         * @param givenSchema
+         *                        the schema, or <code>null</code> for none.
+         * @return this builder.
+         */
+        public Builder schema(final GumshoeSchema givenSchema) {
+            schema = givenSchema;
+            return this;
+        }
+
+        /**
+         * Import options written by <code>GumshoeReturn.exportBinary</code>
+         * or <code>GumshoeReturn.exportJson</code> instead of looking for
+         * configuration files and environment variables. The command line
+         * is still applied on top of them.
+         *
+         * The path is opened through the ConfigFinder once, on the first
+         * gather, and what is read is kept; so it may be a pipe or an
+         * inherited file descriptor, such as <code>/dev/fd/3</code>. Secrets
+         * are imported as the paths of their files, which are read through
+         * the ConfigFinder when each secret is first looked up, whether or
+         * not secret files are turned on here.
+         *
+         * @param givenImportPath
+         *                            the path to import from, or
+         *                            <code>null</code> to discover options
+         *                            as usual.
+         * @return this builder.
+         */
+        public Builder importedOptions(final String givenImportPath) {
+            importPath = givenImportPath;
+            return this;
+        }
+
+        /**
+         * Turn on profiles, named by the property <code>givenProfileKey</code>,
+         * such as <code>profile</code>. The property may be set by any layer:
+         * a configuration file, the environment or the command line. When it
+         * is set, say to <code>prod</code>, then next to each configuration
+         * file like <code>config.properties</code> the file
+         * <code>config-prod.properties</code> is also loaded, on top of it and
+         * its fragments. Only the active profile's files are looked for,
+         * and setting the profile in a profile file does not change which
+         * files are loaded. A profile may only hold letters, digits,
+         * <code>.</code>, <code>_</code> and <code>-</code>, and may not
+         * start with <code>.</code>. Off by default.
+         *
+         * @param givenProfileKey
+         *                            the property naming the profile, or
+         *                            <code>null</code> to turn profiles off.
+         * @return this builder.
+         */
+        public Builder profileKey(final String givenProfileKey) {
+            profileKey = givenProfileKey;
+            return this;
+        }
+
+        /**
+         * Build the prepared instance.
+         *
+         * @return a new PreparedGumshoe.
+         * @throws IllegalStateException
+         *                                   if no program name was set.
+         */
+        public PreparedGumshoe build() {
+            if (programName == null) {
+                throw new IllegalStateException("No program name was set.");
+            }
+            ConfigFinder usedFinder = finder;
+            if (usedFinder == null) {
+                usedFinder = createDefaultFinder();
+            }
+            Properties usedSystemProperties = systemProperties;
+            if (usedSystemProperties == null) {
+                usedSystemProperties = System.getProperties();
+            }
+            Map<String, String> usedEnvironment = environment;
+            if (usedEnvironment == null) {
+                usedEnvironment = System.getenv();
+            }
+            SecretResolver secrets = null;
+            if (secretFiles) {
+                secrets = new SecretResolver(usedFinder);
+            }
+            InputStream usedStandardInput = standardInput;
+            if (usedStandardInput == null) {
+                usedStandardInput = System.in;
+            }
+            return new PreparedGumshoe(new Gumshoe(usedFinder,
+                    usedSystemProperties, usedEnvironment, secrets,
+                    argumentFiles, usedStandardInput, schema, importPath,
+                    profileKey, true), programName, aliases);
+        }
     }
 
     /**
      * Object that helps find and open configuration files. It is included in
      * the design of Gumshoe for dependency injection purposes.
      */
-    private ConfigFinder finder;
+    private final ConfigFinder finder;
     /**
      * Intended to represent the System properties, but included here as a
      * member for dependency injection purposes.
      */
-    private Properties systemProperties;
+    private final Properties systemProperties;
     /**
      * Intended to represent the System environment, but included here as a
      * member for dependency injection purposes.
      */
-    private Map<String, String> environment;
+    private final Map<String, String> environment;
+    /**
+     * The environment, split up by program prefix. It is built once, when
+     * this instance is made, as the environment is not expected to change.
+     */
+    private final EnvironmentPartition environmentPartition;
+    /**
+     * Reads secret files named by <code>_FILE</code> environment variables,
+     * or <code>null</code> if secret files are turned off.
+     */
+    private final SecretResolver secrets;
+    /**
+     * Reads the secret files of gathered options, whether named by
+     * <code>_FILE</code> environment variables or imported, or
+     * <code>null</code> if there can be none.
+     */
+    private final SecretResolver resultSecrets;
+    /**
+     * Whether files and fragment directories are remembered, and only read
+     * again once they have been modified.
+     */
+    private final boolean caching;
+    /**
+     * Configuration files that have been loaded, with when they were last
+     * modified.
+     */
+    private final Map<String, Stamped<Properties>> fileCache;
+    /**
+     * Fragment directories that have been listed, with when they were last
+     * modified.
+     */
+    private final Map<String, Stamped<List<String>>> listingCache;
+    /**
+     * Whether argument files and standard input may hold arguments.
+     */
+    private final boolean argumentFiles;
+    /**
+     * Where <code>--options-from-stdin</code> reads arguments from.
+     */
+    private final InputStream standardInput;
+    /**
+     * Whether a gather has already claimed the standard input.
+     */
+    private final AtomicBoolean standardInputClaimed;
+    /**
+     * The constraints gathered options must meet, or <code>null</code> if
+     * there are none.
+     */
+    private final GumshoeSchema schema;
+    /**
+     * Where to import options from instead of discovering them, or
+     * <code>null</code> to discover them.
+     */
+    private final String importPath;
+    /**
+     * The imported options, once they have been read.
+     */
+    private Properties imported;
+    /**
+     * The property naming the active profile, or <code>null</code> if
+     * profiles are turned off.
+     */
+    private final String profileKey;
 
     /**
      * Constructor used to create Gumshoe internally, intended to be used by
@@ -98,9 +571,149 @@ public class Gumshoe {
     protected Gumshoe(final ConfigFinder givenFinder,
             final Properties givenSystemProperties,
             final Map<String, String> givenEnvironment) {
+        this(givenFinder, givenSystemProperties, givenEnvironment, null,
+                false, System.in, null, null, null, false);
+    }
+
+    /**
+     * Constructor used by <code>Gumshoe.Builder</code>.
+     *
+     * @param givenFinder
+     *                                  the ConfigFinder object to be used.
+     * @param givenSystemProperties
+     *                                  the System properties.
+     * @param givenEnvironment
+     *                                  the environment.
+     * @param givenSecrets
+     *                                  reads secret files, or
+     *                                  <code>null</code> if secret files are
+     *                                  turned off.
+     * @param givenArgumentFiles
+     *                                  whether argument files and standard
+     *                                  input may hold arguments.
+     * @param givenStandardInput
+     *                                  where
+     *                                  <code>--options-from-stdin</code>
+     *                                  reads arguments from.
+     * @param givenSchema
+     *                                  the constraints gathered options must
+     *                                  meet, or <code>null</code>.
+     * @param givenImportPath
+     *                                  where to import options from, or
+     *                                  <code>null</code> to discover them.
+     * @param givenProfileKey
+     *                                  the property naming the active
+     *                                  profile, or <code>null</code>.
+     * @param givenCaching
+     *                                  whether to remember files and
+     *                                  fragment directories until they are
+     *                                  modified.
+     */
+    private Gumshoe(final ConfigFinder givenFinder,
+            final Properties givenSystemProperties,
+            final Map<String, String> givenEnvironment,
+            final SecretResolver givenSecrets,
+            final boolean givenArgumentFiles,
+            final InputStream givenStandardInput,
+            final GumshoeSchema givenSchema,
+            final String givenImportPath, final String givenProfileKey,
+            final boolean givenCaching) {
         finder = givenFinder;
         systemProperties = givenSystemProperties;
         environment = givenEnvironment;
+        environmentPartition = new EnvironmentPartition(givenEnvironment);
+        secrets = givenSecrets;
+        if (givenSecrets == null && givenImportPath != null) {
+            resultSecrets = new SecretResolver(givenFinder);
+        } else {
+            resultSecrets = givenSecrets;
+        }
+        argumentFiles = givenArgumentFiles;
+        standardInput = givenStandardInput;
+        standardInputClaimed = new AtomicBoolean(false);
+        schema = givenSchema;
+        importPath = givenImportPath;
+        profileKey = givenProfileKey;
+        caching = givenCaching;
+        fileCache = new ConcurrentHashMap<String, Stamped<Properties>>();
+        listingCache = new ConcurrentHashMap<String, Stamped<List<String>>>();
+    }
+
+    /**
+     * Create the empty properties object that gathered options are merged
+     * into.
+     *
+     * @return a new Properties object, which is a
+     *         <code>SecretProperties</code> object if secret files are turned
+     *         on or options are imported, as imported options may hold
+     *         secrets.
+     */
+    Properties newResults() {
+        if (this.resultSecrets != null) {
+            return new SecretProperties(this.resultSecrets);
+        }
+        return new Properties();
+    }
+
+    /**
+     * Load a configuration file, or give back what was loaded from it before
+     * if it has not been modified since and this instance remembers files.
+     *
+     * @param path
+     *                   the path to the configuration file.
+     * @param reload
+     *                   whether to read the file again even if it looks
+     *                   unmodified. What is read is remembered either way.
+     * @return the file's properties. These must not be changed, as they may
+     *         be given out again.
+     * @throws IOException
+     *                         An IOException is thrown if the file could not be
+     *                         opened.
+     */
+    Properties loadFile(final String path, final boolean reload)
+            throws IOException {
+        long modified = -1;
+        if (this.caching) {
+            modified = this.finder.lastModified(path);
+        }
+        if (modified >= 0 && !reload) {
+            Stamped<Properties> cached = this.fileCache.get(path);
+            if (cached != null && cached.getModified() == modified) {
+                return cached.getValue();
+            }
+        }
+        Properties loaded = new Properties();
+        try (InputStream configFile = this.finder.getInputStream(path);
+                InputStreamReader utfReader = new InputStreamReader(configFile,
+                        StandardCharsets.UTF_8)) {
+            loaded.load(utfReader);
+        }
+        if (modified >= 0) {
+            this.fileCache.put(path, new Stamped<Properties>(modified, loaded));
+        }
+        return loaded;
+    }
+
+    /**
+     * Load a configuration file if it exists.
+     *
+     * @param path
+     *                   the path to the configuration file.
+     * @param reload
+     *                   whether to read the file again even if it looks
+     *                   unmodified.
+     * @return the file's properties, which must not be changed, or
+     *         <code>null</code> if the file does not exist.
+     * @throws IOException
+     *                         An IOException is thrown if the file could not be
+     *                         opened.
+     */
+    Properties loadFileIfExists(final String path, final boolean reload)
+            throws IOException {
+        if (this.finder.pathExists(path)) {
+            return loadFile(path, reload);
+        }
+        return null;
     }
 
     /**
@@ -118,21 +731,325 @@ public class Gumshoe {
      */
     private void addFileIfExists(final Properties props, final String path)
             throws IOException {
-        if (this.finder.pathExists(path)) {
-            Properties intermediate = new Properties();
-            InputStream configFile = this.finder.getInputStream(path);
-            InputStreamReader utfReader = new InputStreamReader(configFile,
-                    Charset.forName("UTF-8"));
-            intermediate.load(utfReader);
-            props.putAll(intermediate);
+        Properties loaded = loadFileIfExists(path, false);
+        if (loaded != null) {
+            props.putAll(loaded);
         }
     }
 
     /**
-     * Gathers all properties from all configuration files. Looks in the
-     * contents of the variable <code>&lt;PROGRAM_NAME&gt;_CONFIG_FILES</code>
-     * or, if that is unset, looks in default places depending on the settings
-     * in the environment:
+     * List the fragments in a fragment directory, in lexical order. If this
+     * instance remembers directories, the directory is only listed again if
+     * it has been modified since it was last listed.
+     *
+     * @param directory
+     *                      the path to the fragment directory.
+     * @param relist
+     *                      whether to list the directory again even if it
+     *                      looks unmodified.
+     * @return the paths of the fragments, or an empty list if the directory
+     *         does not exist.
+     * @throws IOException
+     *                         An IOException is thrown if the directory could
+     *                         not be read.
+     */
+    List<String> listFragments(final String directory, final boolean relist)
+            throws IOException {
+        long modified = -1;
+        if (this.caching) {
+            modified = this.finder.lastModified(directory);
+        }
+        if (modified >= 0 && !relist) {
+            Stamped<List<String>> cached = this.listingCache.get(directory);
+            if (cached != null && cached.getModified() == modified) {
+                return cached.getValue();
+            }
+        }
+        List<String> fragments = new ArrayList<String>(
+                this.finder.listFiles(directory, FRAGMENT_EXTENSION));
+        Collections.sort(fragments);
+        fragments = Collections.unmodifiableList(fragments);
+        if (modified >= 0) {
+            this.listingCache.put(directory,
+                    new Stamped<List<String>>(modified, fragments));
+        }
+        return fragments;
+    }
+
+    /**
+     * Load fragments, in the order given. When there are many fragments to
+     * read, they are read in parallel.
+     *
+     * @param fragments
+     *                      the paths of the fragments.
+     * @return the fragments' properties, in the same order. These must not
+     *         be changed, as they may be given out again.
+     * @throws IOException
+     *                         An IOException is thrown if a fragment could not
+     *                         be read.
+     */
+    List<Properties> loadFragments(final List<String> fragments)
+            throws IOException {
+        if (fragments.size() < PARALLEL_FRAGMENTS) {
+            List<Properties> loaded = new ArrayList<Properties>();
+            for (String fragment : fragments) {
+                loaded.add(loadFile(fragment, false));
+            }
+            return loaded;
+        }
+        try {
+            return fragments.parallelStream().map((String fragment) -> {
+                try {
+                    return loadFile(fragment, false);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+    /**
+     * Merge the properties of every fragment in a fragment directory into the
+     * properties object <code>props</code>, in lexical order.
+     *
+     * @param props
+     *                      the properties object that is being built.
+     * @param directory
+     *                      the path to the fragment directory.
+     * @throws IOException
+     *                         An IOException is thrown if the directory or a
+     *                         fragment could not be read.
+     */
+    private void addFragments(final Properties props, final String directory)
+            throws IOException {
+        for (Properties fragment
+                : loadFragments(listFragments(directory, false))) {
+            props.putAll(fragment);
+        }
+    }
+
+    /**
+     * Check whether options are imported rather than discovered.
+     *
+     * @return whether or not an import path was given.
+     */
+    boolean importsOptions() {
+        return this.importPath != null;
+    }
+
+    /**
+     * Read the imported options, the first time they are asked for.
+     *
+     * @return the imported options, which must not be changed, or
+     *         <code>null</code> if options are not imported.
+     * @throws IOException
+     *                         thrown if the imported options could not be
+     *                         read.
+     */
+    private synchronized Properties importedOptions() throws IOException {
+        if (this.importPath != null && this.imported == null) {
+            try (InputStream input = this.finder.getInputStream(importPath)) {
+                this.imported = OptionsCodec.read(input, resultSecrets);
+            }
+        }
+        return this.imported;
+    }
+
+    /**
+     * Merge the imported options, if there are any, into
+     * <code>results</code>. Imported secrets stay secret, and are not read.
+     *
+     * @param results
+     *                    the Properties object being built, made by
+     *                    <code>newResults</code>.
+     * @throws IOException
+     *                         thrown if the imported options could not be
+     *                         read.
+     */
+    void gatherImported(final Properties results) throws IOException {
+        Properties options = importedOptions();
+        if (options != null) {
+            results.putAll(options);
+        }
+        if (options instanceof SecretProperties) {
+            for (Map.Entry<String, String> secret : ((SecretProperties) options)
+                    .getSecretPaths().entrySet()) {
+                ((SecretProperties) results).setSecret(secret.getKey(),
+                        secret.getValue());
+            }
+        }
+    }
+
+    /**
+     * Merges the properties of every configuration file that exists among
+     * <code>candidates</code> into <code>results</code>, in order. The
+     * fragments in a location's fragment directory are merged right after
+     * its configuration file, followed by its profile file if there is an
+     * active profile.
+     *
+     * @param results
+     *                       the Properties object being built up and having
+     *                       settings merged into it.
+     * @param candidates
+     *                       the configuration locations to try, as found by
+     *                       <code>findConfigCandidates</code>.
+     * @param profile
+     *                       the active profile, or <code>null</code>.
+     * @throws IOException
+     *                         IOException is thrown if opening a configuration
+     *                         file fails for some reason.
+     */
+    void gatherConfigFiles(final Properties results,
+            final List<ConfigLocation> candidates, final String profile)
+            throws IOException {
+        for (ConfigLocation candidate : candidates) {
+            addFileIfExists(results, candidate.getPath());
+            if (candidate.getFragmentDirectory() != null) {
+                addFragments(results, candidate.getFragmentDirectory());
+            }
+            if (profile != null) {
+                addFileIfExists(results,
+                        profilePath(candidate.getPath(), profile));
+            }
+        }
+    }
+
+    /**
+     * Check whether profiles are turned on.
+     *
+     * @return whether or not there is a profile key.
+     */
+    boolean hasProfiles() {
+        return this.profileKey != null;
+    }
+
+    /**
+     * Find the path of a configuration file's profile file, by putting
+     * <code>-&lt;profile&gt;</code> before its <code>.properties</code>
+     * ending, or after its name if it has no such ending.
+     *
+     * @param path
+     *                    the path of the configuration file.
+     * @param profile
+     *                    the profile.
+     * @return the path of the profile file.
+     */
+    static String profilePath(final String path, final String profile) {
+        if (path.endsWith(FRAGMENT_EXTENSION)) {
+            return path.substring(0, path.length()
+                    - FRAGMENT_EXTENSION.length()) + "-" + profile
+                    + FRAGMENT_EXTENSION;
+        }
+        return path + "-" + profile;
+    }
+
+    /**
+     * Find the active profile in merged options.
+     *
+     * @param results
+     *                    the merged options.
+     * @return the profile, or <code>null</code> if profiles are off or no
+     *         profile is set.
+     * @throws GumshoeException
+     *                              thrown if the profile is not made only of
+     *                              letters, digits, <code>.</code>,
+     *                              <code>_</code> and <code>-</code>, or
+     *                              starts with <code>.</code>, as it could
+     *                              then name a file outside of the
+     *                              configuration file's directory, or no
+     *                              file at all.
+     */
+    String findProfile(final Properties results) throws GumshoeException {
+        if (this.profileKey == null) {
+            return null;
+        }
+        String profile = results.getProperty(this.profileKey);
+        if (profile == null || profile.isEmpty()) {
+            return null;
+        }
+        if (!isSafeProfile(profile)) {
+            throw new GumshoeException("Invalid profile: " + profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Check that a profile is only letters, digits, <code>.</code>,
+     * <code>_</code> and <code>-</code>, and does not start with
+     * <code>.</code>. This is checked by hand rather than with a regular
+     * expression, to keep regular expressions off the startup path.
+     *
+     * @param profile
+     *                    the profile, which is not empty.
+     * @return whether or not the profile can be put into a file name.
+     */
+    private static boolean isSafeProfile(final String profile) {
+        if (profile.charAt(0) == '.') {
+            return false;
+        }
+        int index = 0;
+        while (index < profile.length()) {
+            int codePoint = profile.codePointAt(index);
+            if (!Character.isLetterOrDigit(codePoint) && codePoint != '.'
+                    && codePoint != '_' && codePoint != '-') {
+                return false;
+            }
+            index += Character.charCount(codePoint);
+        }
+        return true;
+    }
+
+    /**
+     * Load the profile files of the configuration locations that have one.
+     *
+     * @param locations
+     *                      the configuration locations.
+     * @param profile
+     *                      the active profile.
+     * @return the profile files that exist, by path. Their tables must not
+     *         be changed.
+     * @throws IOException
+     *                         thrown if a profile file could not be read.
+     */
+    Map<String, Properties> loadProfileFiles(
+            final List<ConfigLocation> locations, final String profile)
+            throws IOException {
+        Map<String, Properties> loaded = new HashMap<String, Properties>();
+        for (ConfigLocation location : locations) {
+            String path = profilePath(location.getPath(), profile);
+            Properties table = loadFileIfExists(path, false);
+            if (table != null) {
+                loaded.put(path, table);
+            }
+        }
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    /**
+     * Make a default configuration location, with a fragment directory.
+     *
+     * @param base
+     *                        the base directory, such as the home directory.
+     * @param directory
+     *                        the name of the program's directory under
+     *                        <code>base</code>.
+     * @return the configuration location.
+     */
+    private ConfigLocation defaultLocation(final String base,
+            final String directory) {
+        String separator = this.systemProperties.getProperty("file.separator");
+        return new ConfigLocation(
+                String.join(separator, base, directory, "config.properties"),
+                String.join(separator, base, directory, "config.d"));
+    }
+
+    /**
+     * Finds the paths of all configuration files that might hold properties
+     * for the program. Looks in the contents of the variable
+     * <code>&lt;PROGRAM_NAME&gt;_CONFIG_FILES</code> or, if that is unset,
+     * looks in default places depending on the settings in the environment:
      *
      * * If <code>AppData</code> is set in the environment, it looks under
      * <code>%APPDATA%\\&lt;programName&gt;\\config.properties</code>
@@ -148,63 +1065,49 @@ public class Gumshoe {
      * <code>HOME</code> variable is set in the environment, it looks there
      * instead.
      *
-     * @param results
-     *                        the Properties object being built up and having
-     *                        settings merged into it.
+     * Each of the default places also has a <code>config.d</code> directory
+     * next to its <code>config.properties</code> file, holding fragments.
      *
      * @param programName
      *                        the name of the program that is calling Gumshoe.
-     *
-     * @throws IOException
-     *                         IOException is thrown if opening a configuration
-     *                         file fails for some reason.
+     * @param upperName
+     *                        the upper-cased program name.
+     * @return the candidate locations, in the order they should be merged.
      */
-
-    private void gatherConfigFiles(final Properties results,
-            final String programName) throws IOException {
-
-        List<String> candidates = new ArrayList<String>();
+    List<ConfigLocation> findConfigCandidates(final String programName,
+            final String upperName) {
+        List<ConfigLocation> candidates = new ArrayList<ConfigLocation>();
         String predefinedLocations = this.environment
-                .get(programName.toUpperCase() + "_CONFIG_FILES");
+                .get(upperName + "_CONFIG_FILES");
         if (predefinedLocations != null) {
             for (String location : predefinedLocations.split(",")) {
-                candidates.add(location);
+                candidates.add(new ConfigLocation(location, null));
             }
         } else {
             if (this.systemProperties.get("file.separator") == null) {
-                return;
+                return candidates;
             }
             String nextValue = this.environment.get("AppData");
             if (nextValue != null && !nextValue.equals("")) {
-                candidates.add(String.join(
-                        this.systemProperties.getProperty("file.separator"),
-                        nextValue, programName, "config.properties"));
+                candidates.add(defaultLocation(nextValue, programName));
             }
             nextValue = this.environment.get("XDG_CONFIG_HOME");
             if (nextValue != null && !nextValue.equals("")) {
-                candidates.add(String.join(
-                        this.systemProperties.getProperty("file.separator"),
-                        nextValue, programName, "config.properties"));
+                candidates.add(defaultLocation(nextValue, programName));
             }
             nextValue = this.environment.get("HOME");
             if (nextValue == null) {
                 nextValue = this.systemProperties.getProperty("user.home");
             }
             if (nextValue != null && !nextValue.equals("")) {
-                candidates.add(String.join(
-                        this.systemProperties.getProperty("file.separator"),
-                        nextValue, "." + programName, "config.properties"));
+                candidates.add(defaultLocation(nextValue, "." + programName));
             }
             nextValue = this.systemProperties.getProperty("user.dir");
             if (nextValue != null && !nextValue.equals("")) {
-                candidates.add(String.join(
-                        this.systemProperties.getProperty("file.separator"),
-                        nextValue, "." + programName, "config.properties"));
+                candidates.add(defaultLocation(nextValue, "." + programName));
             }
         }
-        for (String candidate : candidates) {
-            addFileIfExists(results, candidate);
-        }
+        return candidates;
     }
 
     /**
@@ -216,25 +1119,53 @@ public class Gumshoe {
      * setting a property named <code>property.name</code> in the properties
      * object to the value of the found variable.
      *
+     * If secret files are turned on, variables of the form
+     * <code>&lt;PROGRAMNAME&gt;_PROPERTY_NAME_FILE</code> instead set
+     * <code>property.name</code> to a secret that is read from the named file
+     * when it is looked up, unless
+     * <code>&lt;PROGRAMNAME&gt;_PROPERTY_NAME</code> is also set.
+     *
      * @param results
-     *                        the Properties object being built.
-     * @param programName
-     *                        the name of the program calling Gumshoe.
+     *                            the Properties object being built, made by
+     *                            <code>newResults</code>.
+     * @param variables
+     *                            the program's environment variables, as found
+     *                            by <code>findEnvironment</code>.
      */
-
-    private void gatherEnvironment(final Properties results,
-            final String programName) {
-        Pattern findProgramName = Pattern
-                .compile("^" + programName.toUpperCase() + "_(.*)$");
-        this.environment.forEach((String key, String value) -> {
-            Matcher inspect = findProgramName.matcher(key);
-            if (inspect.matches()) {
-                String propertyName = inspect.group(1).toLowerCase()
-                        .replace('_', '.');
-                results.setProperty(propertyName, value);
+    void gatherEnvironment(final Properties results,
+            final List<EnvironmentPartition.Variable> variables) {
+        for (EnvironmentPartition.Variable variable : variables) {
+            String suffix = variable.getSuffix();
+            if (this.secrets != null && suffix.endsWith(SECRET_SUFFIX)
+                    && suffix.length() > SECRET_SUFFIX.length()) {
+                String name = variable.getName();
+                String plainName = name.substring(0,
+                        name.length() - SECRET_SUFFIX.length());
+                if (!this.environment.containsKey(plainName)) {
+                    String propertyName = variable.getPropertyName();
+                    ((SecretProperties) results).setSecret(
+                            propertyName.substring(0, propertyName.length()
+                                    - SECRET_SUFFIX.length()),
+                            variable.getValue());
+                }
+            } else {
+                results.setProperty(variable.getPropertyName(),
+                        variable.getValue());
             }
-        });
+        }
+    }
 
+    /**
+     * Find a program's environment variables.
+     *
+     * @param upperName
+     *                      the upper-cased program name.
+     * @return the variables of the form
+     *         <code>&lt;PROGRAMNAME&gt;_PROPERTY_NAME</code>.
+     */
+    List<EnvironmentPartition.Variable> findEnvironment(
+            final String upperName) {
+        return this.environmentPartition.slice(upperName);
     }
 
     /**
@@ -263,10 +1194,13 @@ public class Gumshoe {
      * * When it sees arguments like <code>--reset-poperty-name</code> it
      * removes <code>property.name</code> from the properties object
      *
+     * If argument files are turned on, an argument like <code>@path</code> is
+     * replaced by the arguments in the file at <code>path</code>, and the
+     * argument <code>--options-from-stdin</code> by the arguments read from
+     * standard input. See <code>Builder.argumentFiles</code>.
+     *
      * @param results
      *                        the Properties object being built.
-     * @param programName
-     *                        the name of the program calling Gumshoe.
      * @param aliases
      *                        Aliases specified by the calling program. Any
      *                        string in the command line matching one of the
@@ -274,61 +1208,491 @@ public class Gumshoe {
      *                        value before it is examined by the above rules.
      * @param arguments
      *                        the command line arguments to be examined.
+     * @throws IOException
+     *                              IOException is thrown when an argument file
+     *                              could not be read.
      * @throws GumshoeException
      *                              GumshoeException is thrown when the command
      *                              line parsing fails for some reason.
+     * @return the argument layer that was applied, holding any unparsed
+     *         arguments from the command line.
+     */
+    ArgumentLayer gatherArguments(final Properties results,
+            final Map<String, String> aliases, final String[] arguments)
+            throws IOException, GumshoeException {
+        ArgumentLayer layer = ArgumentLayer.applyingTo(results);
+        applyArguments(layer, aliases, new ArrayArgumentSource(arguments),
+                this.argumentFiles);
+        return layer;
+    }
+
+    /**
+     * Gather options from every source, in order: configuration files, the
+     * environment, then the command line.
+     *
+     * @param locations
+     *                        the configuration locations to try.
+     * @param variables
+     *                        the program's environment variables.
+     * @param aliases
+     *                        the command line aliases.
+     * @param arguments
+     *                        the command line arguments.
      * @return a GumshoeReturn object containing the finished properties object
      *         and any unparsed arguments from the command line.
+     * @throws IOException
+     *                              thrown if a configuration or argument file
+     *                              could not be read.
+     * @throws GumshoeException
+     *                              thrown if the command line could not be
+     *                              parsed, or the options do not meet the
+     *                              schema.
      */
-    private GumshoeReturn gatherArguments(final Properties results,
-            final String programName, final Map<String, String> aliases,
-            final String[] arguments) throws GumshoeException {
-        Pattern findParts = Pattern.compile("^--([^-]+)-(.+)$");
-        int index = 0;
-        List<String> unusedArguments = new ArrayList<String>();
-        while (index < arguments.length) {
-            String argument = arguments[index];
-            String usedArgument = aliases.get(argument);
-            if (usedArgument == null) {
-                usedArgument = argument;
-            }
-            Matcher inspect = findParts.matcher(usedArgument);
-            if (inspect.matches()) {
-                String verb = inspect.group(1);
-                String property = inspect.group(2).toLowerCase().replace('-',
-                        '.');
-                if (verb.equals("enable")) {
-                    results.setProperty(property, "true");
-                } else if (verb.equals("disable")) {
-                    results.setProperty(property, "false");
-                } else if (verb.equals("reset")) {
-                    results.remove(property);
-                } else {
-                    String nextArgument;
-                    if (index + 1 >= arguments.length) {
-                        throw new GumshoeException("Not enough arguments.");
-                    } else {
-                        index = index + 1;
-                        nextArgument = arguments[index];
+    GumshoeReturn gather(final List<ConfigLocation> locations,
+            final List<EnvironmentPartition.Variable> variables,
+            final Map<String, String> aliases, final String[] arguments)
+            throws IOException, GumshoeException {
+        if (this.profileKey == null) {
+            Properties results = newResults();
+            gatherImported(results);
+            gatherConfigFiles(results, locations, null);
+            gatherEnvironment(results, variables);
+            ArgumentLayer layer = gatherArguments(results, aliases, arguments);
+            return finish(results, layer.getUnusedArguments(), locations,
+                    variables, layer, null);
+        }
+        ArgumentLayer layer = parseArguments(aliases, arguments);
+        Properties results = merge(locations, variables, layer, null);
+        String profile = findProfile(results);
+        if (profile != null) {
+            results = merge(locations, variables, layer, profile);
+        }
+        return finish(results, layer.getUnusedArguments(), locations,
+                variables, layer, profile);
+    }
+
+    /**
+     * Merge every source with a recorded command line.
+     *
+     * @param locations
+     *                        the configuration locations to try.
+     * @param variables
+     *                        the program's environment variables.
+     * @param layer
+     *                        the recorded command line.
+     * @param profile
+     *                        the active profile, or <code>null</code>.
+     * @return the merged options.
+     * @throws IOException
+     *                         thrown if a configuration file could not be
+     *                         read.
+     */
+    private Properties merge(final List<ConfigLocation> locations,
+            final List<EnvironmentPartition.Variable> variables,
+            final ArgumentLayer layer, final String profile)
+            throws IOException, GumshoeException {
+        Properties results = newResults();
+        gatherImported(results);
+        gatherConfigFiles(results, locations, profile);
+        gatherEnvironment(results, variables);
+        replayArguments(results, layer);
+        return results;
+    }
+
+    /**
+     * Replay a recorded command line on merged options.
+     *
+     * @param results
+     *                    the options merged so far.
+     * @param layer
+     *                    the recorded command line.
+     * @throws GumshoeException
+     *                              thrown if the command line adds to a secret
+     *                              property.
+     */
+    void replayArguments(final Properties results, final ArgumentLayer layer)
+            throws GumshoeException {
+        String secret = layer.replay(results);
+        if (secret != null) {
+            throw cannotAddToSecret(secret);
+        }
+    }
+
+    /**
+     * Make the exception thrown when the command line adds to a secret
+     * property, which would put the secret in the clear.
+     *
+     * @param property
+     *                     the secret property.
+     * @return the exception.
+     */
+    private GumshoeException cannotAddToSecret(final String property) {
+        return new GumshoeException("Cannot add to secret property: "
+                + property);
+    }
+
+    /**
+     * Check merged options against the schema, if there is one, and wrap
+     * them up with the unused arguments.
+     *
+     * @param results
+     *                        the merged options.
+     * @param unused
+     *                        the arguments Gumshoe did not use.
+     * @param locations
+     *                        the configuration locations the options were
+     *                        merged from.
+     * @param variables
+     *                        the environment variables the options were
+     *                        merged from.
+     * @param layer
+     *                        the command line the options were merged from.
+     * @param profile
+     *                        the active profile, or <code>null</code>.
+     * @return a GumshoeReturn object.
+     * @throws IOException
+     *                              thrown if the secret file of a property
+     *                              the schema checks the value of, or a
+     *                              configuration file while finding where a
+     *                              bad property came from, could not be read.
+     * @throws GumshoeException
+     *                              thrown if the options do not meet the
+     *                              schema.
+     */
+    GumshoeReturn finish(final Properties results, final List<String> unused,
+            final List<ConfigLocation> locations,
+            final List<EnvironmentPartition.Variable> variables,
+            final ArgumentLayer layer, final String profile)
+            throws IOException, GumshoeException {
+        if (this.schema != null) {
+            List<GumshoeSchema.Violation> violations =
+                    this.schema.check(results);
+            if (!violations.isEmpty()) {
+                List<String> described = new ArrayList<String>();
+                for (GumshoeSchema.Violation violation : violations) {
+                    String source = findSource(violation.getProperty(),
+                            locations, variables, layer, profile);
+                    StringBuilder line = new StringBuilder(
+                            violation.getProperty());
+                    if (source != null) {
+                        line.append(" (from ").append(source).append(')');
                     }
-                    if (verb.equals("set")) {
-                        results.setProperty(property, nextArgument);
-                    } else if (verb.equals("add")) {
-                        String priorProperty = results.getProperty(property);
-                        if (priorProperty == null) {
-                            results.setProperty(property, nextArgument);
-                        } else {
-                            results.setProperty(property, String.join(",",
-                                    priorProperty, nextArgument));
-                        }
+                    described.add(line.append(' ')
+                            .append(violation.getProblem()).toString());
+                }
+                throw new GumshoeException("Invalid options:\n  "
+                        + String.join("\n  ", described), described);
+            }
+        }
+        return GumshoeReturn.createInstance(unused, results);
+    }
+
+    /**
+     * Find where the merged value of a property came from. This looks
+     * through the layers from the last merged to the first, and so is only
+     * done when something is wrong.
+     *
+     * @param property
+     *                        the property.
+     * @param locations
+     *                        the configuration locations.
+     * @param variables
+     *                        the environment variables.
+     * @param layer
+     *                        the command line.
+     * @param profile
+     *                        the active profile, or <code>null</code>.
+     * @return where the property came from, or <code>null</code> if it is not
+     *         set anywhere.
+     * @throws IOException
+     *                         thrown if a configuration file could not be
+     *                         read.
+     */
+    private String findSource(final String property,
+            final List<ConfigLocation> locations,
+            final List<EnvironmentPartition.Variable> variables,
+            final ArgumentLayer layer, final String profile)
+            throws IOException {
+        if (layer.touches(property)) {
+            return "the command line";
+        }
+        String secretName = property + SECRET_SUFFIX.toLowerCase()
+                .replace('_', '.');
+        for (int i = variables.size() - 1; i >= 0; i--) {
+            EnvironmentPartition.Variable variable = variables.get(i);
+            if (variable.getPropertyName().equals(property)
+                    || (this.secrets != null
+                            && variable.getPropertyName().equals(secretName))) {
+                return "environment variable " + variable.getName();
+            }
+        }
+        for (int i = locations.size() - 1; i >= 0; i--) {
+            ConfigLocation location = locations.get(i);
+            if (profile != null) {
+                String path = profilePath(location.getPath(), profile);
+                Properties loaded = loadFileIfExists(path, false);
+                if (loaded != null && loaded.containsKey(property)) {
+                    return "file " + path;
+                }
+            }
+            if (location.getFragmentDirectory() != null) {
+                List<String> fragments =
+                        listFragments(location.getFragmentDirectory(), false);
+                for (int j = fragments.size() - 1; j >= 0; j--) {
+                    if (loadFile(fragments.get(j), false)
+                            .containsKey(property)) {
+                        return "file " + fragments.get(j);
                     }
                 }
+            }
+            Properties loaded = loadFileIfExists(location.getPath(), false);
+            if (loaded != null && loaded.containsKey(property)) {
+                return "file " + location.getPath();
+            }
+        }
+        Properties options = importedOptions();
+        if (options != null && options.containsKey(property)) {
+            return "imported options " + this.importPath;
+        }
+        return null;
+    }
+
+    /**
+     * Parse the command line arguments into a recorded argument layer, which
+     * can be replayed on top of the other layers as often as is needed.
+     *
+     * @param aliases
+     *                      the command line aliases.
+     * @param arguments
+     *                      the command line arguments to be examined.
+     * @return the recorded argument layer.
+     * @throws IOException
+     *                              thrown if an argument file could not be
+     *                              read.
+     * @throws GumshoeException
+     *                              thrown when the arguments could not be
+     *                              parsed.
+     */
+    ArgumentLayer parseArguments(final Map<String, String> aliases,
+            final String[] arguments) throws IOException, GumshoeException {
+        ArgumentLayer layer = ArgumentLayer.recording();
+        applyArguments(layer, aliases, new ArrayArgumentSource(arguments),
+                this.argumentFiles);
+        return layer;
+    }
+
+    /**
+     * Apply every argument from <code>source</code> to the argument layer
+     * being built, as described for <code>gatherArguments</code>.
+     *
+     * @param layer
+     *                            the argument layer being built.
+     * @param aliases
+     *                            the command line aliases.
+     * @param source
+     *                            where to read arguments from.
+     * @param expandFiles
+     *                            whether <code>@path</code> and
+     *                            <code>--options-from-stdin</code> arguments
+     *                            should be replaced by the arguments in the
+     *                            file or standard input.
+     * @throws IOException
+     *                              thrown if an argument file could not be
+     *                              read.
+     * @throws GumshoeException
+     *                              thrown when the arguments could not be
+     *                              parsed.
+     */
+    private void applyArguments(final ArgumentLayer layer,
+            final Map<String, String> aliases, final ArgumentSource source,
+            final boolean expandFiles) throws IOException, GumshoeException {
+        String argument = source.next();
+        while (argument != null) {
+            if (expandFiles && argument.equals(STDIN_ARGUMENT)) {
+                // Standard input belongs to the program, so it is not closed.
+                // It can only be read once, so only one gather gets it.
+                if (standardInputClaimed.compareAndSet(false, true)) {
+                    applyArguments(layer, aliases,
+                            new ArgumentFileReader(this.standardInput),
+                            false);
+                }
+            } else if (expandFiles && argument.length() > 1
+                    && argument.charAt(0) == '@') {
+                try (ArgumentFileReader file = new ArgumentFileReader(
+                        this.finder.getInputStream(argument.substring(1)))) {
+                    applyArguments(layer, aliases, file, false);
+                }
             } else {
-                unusedArguments.add(usedArgument);
+                applyArgument(layer, aliases, argument, source);
             }
-            index = index + 1;
+            argument = source.next();
+        }
+    }
+
+    /**
+     * Check whether an argument has the form <code>--verb-property</code>,
+     * where the verb has no dashes in it and the property is not empty and
+     * has no line breaks in it.
+     *
+     * @param argument
+     *                     the argument to check.
+     * @return the index of the dash after the verb, or <code>-1</code> if the
+     *         argument does not have that form.
+     */
+    static int findVerbEnd(final String argument) {
+        if (!argument.startsWith(ARGUMENT_PREFIX)) {
+            return -1;
+        }
+        int verbEnd = argument.indexOf('-', ARGUMENT_PREFIX.length());
+        if (verbEnd <= ARGUMENT_PREFIX.length()
+                || verbEnd + 1 >= argument.length()
+                || EnvironmentPartition.hasLineTerminator(argument,
+                        verbEnd + 1)) {
+            return -1;
+        }
+        return verbEnd;
+    }
+
+    /**
+     * Apply one argument to the argument layer being built, reading its
+     * value from <code>source</code> if it needs one.
+     *
+     * @param layer
+     *                            the argument layer being built.
+     * @param aliases
+     *                            the command line aliases.
+     * @param argument
+     *                            the argument to apply.
+     * @param source
+     *                            where the argument came from.
+     * @throws IOException
+     *                              thrown if the argument's value could not be
+     *                              read.
+     * @throws GumshoeException
+     *                              thrown when the argument needs a value but
+     *                              there are no more arguments.
+     */
+    private void applyArgument(final ArgumentLayer layer,
+            final Map<String, String> aliases, final String argument,
+            final ArgumentSource source) throws IOException, GumshoeException {
+        String usedArgument = aliases.get(argument);
+        if (usedArgument == null) {
+            usedArgument = argument;
+        }
+        int verbEnd = findVerbEnd(usedArgument);
+        if (verbEnd >= 0) {
+            String verb = usedArgument.substring(ARGUMENT_PREFIX.length(),
+                    verbEnd);
+            String property = usedArgument.substring(verbEnd + 1)
+                    .toLowerCase().replace('-', '.');
+            if (verb.equals("enable")) {
+                layer.set(property, "true");
+            } else if (verb.equals("disable")) {
+                layer.set(property, "false");
+            } else if (verb.equals("reset")) {
+                layer.reset(property);
+            } else {
+                String nextArgument = source.next();
+                if (nextArgument == null) {
+                    throw new GumshoeException("Not enough arguments.");
+                }
+                if (verb.equals("set")) {
+                    layer.set(property, nextArgument);
+                } else if (verb.equals("add")
+                        && !layer.add(property, nextArgument)) {
+                    throw cannotAddToSecret(property);
+                }
+            }
+        } else {
+            layer.unused(usedArgument);
+        }
+    }
+
+    /**
+     * Something read from a file or directory, together with when the file
+     * or directory was last modified.
+     *
+     * @param <T>
+     *                the type of what was read.
+     */
+    private static final class Stamped<T> {
+        /**
+         * When the file or directory was last modified.
+         */
+        private final long modified;
+        /**
+         * What was read.
+         */
+        private final T value;
+
+        /**
+         * Constructor for the Stamped class.
+         *
+         * @param givenModified
+         *                          when the file or directory was last
+         *                          modified.
+         * @param givenValue
+         *                          what was read.
+         */
+        Stamped(final long givenModified, final T givenValue) {
+            modified = givenModified;
+            value = givenValue;
+        }
+
+        /**
+         * Getter for when the file or directory was last modified.
+         *
+         * @return the modification time.
+         */
+        long getModified() {
+            return this.modified;
+        }
+
+        /**
+         * Getter for what was read.
+         *
+         * @return what was read.
+         */
+        T getValue() {
+            return this.value;
+        }
+    }
+
+    /**
+     * Reads arguments out of an array, such as the one given to
+     * <code>main</code>.
+     */
+    private static final class ArrayArgumentSource implements ArgumentSource {
+        /**
+         * The arguments.
+         */
+        private final String[] arguments;
+        /**
+         * The index of the next argument.
+         */
+        private int index;
+
+        /**
+         * Constructor for the ArrayArgumentSource class.
+         *
+         * @param givenArguments
+         *                           the arguments.
+         */
+        ArrayArgumentSource(final String[] givenArguments) {
+            arguments = givenArguments;
+            index = 0;
+        }
+
+        /**
+         * Returns the next argument in the array.
+         */
+        @Override
+        public String next() {
+            if (index >= arguments.length) {
+                return null;
+            }
+            return arguments[index++];
         }
-        return GumshoeReturn.createInstance(unusedArguments, results);
     }
 
     /**
@@ -415,6 +1779,13 @@ public class Gumshoe {
      * together with any arguments that were not parsed and houses them in a
      * <code>GumshoeReturn</code> object.
      *
+     * This method reads every configuration file afresh on each call, and may
+     * be called from many threads at once as long as the ConfigFinder allows
+     * it. Callers that gather options repeatedly for the same program should
+     * prefer <code>Gumshoe.builder</code>, which does the work that does not
+     * depend on <code>arguments</code> only once, and only reads a file again
+     * once its modification time has changed.
+     *
      * @param programName
      *                        The name of the program that is using this
      *                        library.
@@ -441,9 +1812,11 @@ public class Gumshoe {
     public GumshoeReturn gatherOptions(final String programName,
             final Map<String, String> aliases, final String[] arguments)
             throws IOException, GumshoeException {
-        Properties results = new Properties();
-        gatherConfigFiles(results, programName);
-        gatherEnvironment(results, programName);
-        return gatherArguments(results, programName, aliases, arguments);
+        String upperName = programName.toUpperCase();
+        if (importsOptions()) {
+            return gather(List.of(), List.of(), aliases, arguments);
+        }
+        return gather(findConfigCandidates(programName, upperName),
+                findEnvironment(upperName), aliases, arguments);
     }
 }
@@ -0,0 +1,429 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Gathered options that remember each layer they were merged from, made by
+ * <code>PreparedGumshoe.gatherLayers</code>.
+ *
+ * The layers are the table loaded from each configuration file and fragment,
+ * the program's environment variables, and the parsed command line. When
+ * only one of them changes, <code>withArguments</code> and
+ * <code>withFileChanged</code> give back new layers in which only that one has
+ * been worked out again; the others are shared with this instance, not copied,
+ * and the merged result is then built again in the usual order. Instances are
+ * immutable, and so may be shared freely across threads; every call to
+ * <code>getResult</code> gives back a copy of the merged result of its own,
+ * so that no caller can change what another sees.
+ *
+ * @since 1.1.0
+ */
+public final class GumshoeLayers {
+
+    /**
+     * The Gumshoe instance that loads the layers.
+     */
+    private final Gumshoe gumshoe;
+
+    /**
+     * The command line aliases.
+     */
+    private final Map<String, String> aliases;
+
+    /**
+     * The configuration locations, in the order they are merged.
+     */
+    private final List<ConfigLocation> configLocations;
+
+    /**
+     * The program's environment variables.
+     */
+    private final List<EnvironmentPartition.Variable> environmentVariables;
+
+    /**
+     * The table of every configuration file and fragment that exists, by
+     * path.
+     */
+    private final Map<String, Properties> files;
+
+    /**
+     * The fragments in each fragment directory, in the order they are merged.
+     */
+    private final Map<String, List<String>> listings;
+
+    /**
+     * The parsed command line.
+     */
+    private final ArgumentLayer argumentLayer;
+
+    /**
+     * The active profile, or <code>null</code> if there is none.
+     */
+    private final String profile;
+
+    /**
+     * The table of every profile file of the active profile that exists, by
+     * path.
+     */
+    private final Map<String, Properties> profileFiles;
+
+    /**
+     * The merged result, which is never given out, only copies of it.
+     */
+    private final GumshoeReturn result;
+
+    /**
+     * Constructor for the GumshoeLayers class. Finds the active profile,
+     * loading its files unless they are given, and merges the layers.
+     *
+     * @param givenGumshoe
+     *                                the Gumshoe instance to load with.
+     * @param givenAliases
+     *                                the command line aliases.
+     * @param givenConfigLocations
+     *                                the configuration locations.
+     * @param givenVariables
+     *                                the program's environment variables.
+     * @param givenFiles
+     *                                the table of each configuration file, by
+     *                                path.
+     * @param givenListings
+     *                                the fragments in each fragment directory.
+     * @param givenArgumentLayer
+     *                                the parsed command line.
+     * @param knownProfile
+     *                                a profile whose files are already
+     *                                loaded, or <code>null</code>.
+     * @param knownProfileFiles
+     *                                the loaded files of
+     *                                <code>knownProfile</code>.
+     * @throws IOException
+     *                              thrown if a profile file could not be
+     *                              read, or a configuration file could not be
+     *                              read while finding where a bad property
+     *                              came from.
+     * @throws Gumshoe.GumshoeException
+     *                              thrown if the options do not meet the
+     *                              schema, or the command line adds to a
+     *                              secret property.
+     */
+    private GumshoeLayers(final Gumshoe givenGumshoe,
+            final Map<String, String> givenAliases,
+            final List<ConfigLocation> givenConfigLocations,
+            final List<EnvironmentPartition.Variable> givenVariables,
+            final Map<String, Properties> givenFiles,
+            final Map<String, List<String>> givenListings,
+            final ArgumentLayer givenArgumentLayer,
+            final String knownProfile,
+            final Map<String, Properties> knownProfileFiles)
+            throws IOException, Gumshoe.GumshoeException {
+        gumshoe = givenGumshoe;
+        aliases = givenAliases;
+        configLocations = givenConfigLocations;
+        environmentVariables = givenVariables;
+        files = givenFiles;
+        listings = givenListings;
+        argumentLayer = givenArgumentLayer;
+        String found = null;
+        if (givenGumshoe.hasProfiles()) {
+            found = givenGumshoe.findProfile(merge(null, Map.of()));
+        }
+        profile = found;
+        if (found == null) {
+            profileFiles = Map.of();
+        } else if (found.equals(knownProfile)) {
+            profileFiles = knownProfileFiles;
+        } else {
+            profileFiles = givenGumshoe.loadProfileFiles(givenConfigLocations,
+                    found);
+        }
+        Properties results = merge(profile, profileFiles);
+        result = givenGumshoe.finish(results,
+                givenArgumentLayer.getUnusedArguments(), givenConfigLocations,
+                givenVariables, givenArgumentLayer, profile);
+    }
+
+    /**
+     * Load every layer and merge them.
+     *
+     * @param gumshoe
+     *                        the Gumshoe instance that loads the layers.
+     * @param aliases
+     *                        the command line aliases.
+     * @param locations
+     *                        the configuration locations.
+     * @param variables
+     *                        the program's environment variables.
+     * @param arguments
+     *                        the command line arguments.
+     * @return the layers.
+     * @throws IOException
+     *                              thrown if a configuration file could not be
+     *                              read.
+     * @throws Gumshoe.GumshoeException
+     *                              thrown if the command line could not be
+     *                              parsed, or the options do not meet the
+     *                              schema.
+     */
+    static GumshoeLayers gather(final Gumshoe gumshoe,
+            final Map<String, String> aliases,
+            final List<ConfigLocation> locations,
+            final List<EnvironmentPartition.Variable> variables,
+            final String[] arguments)
+            throws IOException, Gumshoe.GumshoeException {
+        Map<String, Properties> files = new HashMap<String, Properties>();
+        Map<String, List<String>> listings =
+                new HashMap<String, List<String>>();
+        for (ConfigLocation location : locations) {
+            Properties loaded =
+                    gumshoe.loadFileIfExists(location.getPath(), false);
+            if (loaded != null) {
+                files.put(location.getPath(), loaded);
+            }
+            String directory = location.getFragmentDirectory();
+            if (directory != null) {
+                List<String> fragments =
+                        gumshoe.listFragments(directory, false);
+                listings.put(directory, fragments);
+                putAll(files, fragments, gumshoe.loadFragments(fragments));
+            }
+        }
+        return new GumshoeLayers(gumshoe, aliases, locations, variables,
+                Collections.unmodifiableMap(files),
+                Collections.unmodifiableMap(listings),
+                gumshoe.parseArguments(aliases, arguments), null, Map.of());
+    }
+
+    /**
+     * Put loaded fragments in a table of files.
+     *
+     * @param files
+     *                      the table of files.
+     * @param fragments
+     *                      the paths of the fragments.
+     * @param loaded
+     *                      the fragments' properties, in the same order.
+     */
+    private static void putAll(final Map<String, Properties> files,
+            final List<String> fragments, final List<Properties> loaded) {
+        for (int i = 0; i < fragments.size(); i++) {
+            files.put(fragments.get(i), loaded.get(i));
+        }
+    }
+
+    /**
+     * Merge the layers in order: imported options, then for each
+     * configuration location its file, its fragments and its profile file,
+     * then the environment, then the command line.
+     *
+     * @param activeProfile
+     *                          the active profile, or <code>null</code>.
+     * @param activeProfileFiles
+     *                          the loaded files of the active profile.
+     * @return the merged options.
+     * @throws IOException
+     *                         thrown if the imported options could not be
+     *                         read.
+     * @throws Gumshoe.GumshoeException
+     *                         thrown if the command line adds to a secret
+     *                         property.
+     */
+    private Properties merge(final String activeProfile,
+            final Map<String, Properties> activeProfileFiles)
+            throws IOException, Gumshoe.GumshoeException {
+        Properties results = gumshoe.newResults();
+        gumshoe.gatherImported(results);
+        for (ConfigLocation location : configLocations) {
+            Properties loaded = files.get(location.getPath());
+            if (loaded != null) {
+                results.putAll(loaded);
+            }
+            String directory = location.getFragmentDirectory();
+            if (directory != null) {
+                for (String fragment : listings.get(directory)) {
+                    results.putAll(files.get(fragment));
+                }
+            }
+            if (activeProfile != null) {
+                loaded = activeProfileFiles.get(Gumshoe.profilePath(
+                        location.getPath(), activeProfile));
+                if (loaded != null) {
+                    results.putAll(loaded);
+                }
+            }
+        }
+        gumshoe.gatherEnvironment(results, environmentVariables);
+        gumshoe.replayArguments(results, argumentLayer);
+        return results;
+    }
+
+    /**
+     * Getter for the merged result. Copying the options costs no more than
+     * putting them into a new table, which merging the layers does anyway.
+     *
+     * @return a new GumshoeReturn object for these layers, whose options the
+     *         caller may change without changing those of any other result.
+     *         Its unused arguments cannot be changed.
+     */
+    public GumshoeReturn getResult() {
+        return GumshoeReturn.createInstance(
+                Collections.unmodifiableList(this.result.getUnusedArguments()),
+                (Properties) this.result.getOptionsMap().clone());
+    }
+
+    /**
+     * Give back these layers with a different command line. No configuration
+     * file is read again.
+     *
+     * @param arguments
+     *                      the new command line arguments.
+     * @return the new layers.
+     * @throws IOException
+     *                              thrown if an argument file could not be
+     *                              read.
+     * @throws Gumshoe.GumshoeException
+     *                              thrown if the command line could not be
+     *                              parsed, or the options do not meet the
+     *                              schema.
+     */
+    public GumshoeLayers withArguments(final String[] arguments)
+            throws IOException, Gumshoe.GumshoeException {
+        return new GumshoeLayers(gumshoe, aliases, configLocations,
+                environmentVariables, files, listings,
+                gumshoe.parseArguments(aliases, arguments), profile,
+                profileFiles);
+    }
+
+    /**
+     * Check whether a path names a file directly inside a directory.
+     *
+     * @param directory
+     *                      the directory.
+     * @param path
+     *                      the path.
+     * @return whether or not the path is in the directory.
+     */
+    private static boolean isInDirectory(final String directory,
+            final String path) {
+        if (path.length() <= directory.length() + 1
+                || !path.startsWith(directory)) {
+            return false;
+        }
+        char separator = path.charAt(directory.length());
+        if (separator != '/' && separator != '\\') {
+            return false;
+        }
+        String name = path.substring(directory.length() + 1);
+        return name.indexOf('/') < 0 && name.indexOf('\\') < 0;
+    }
+
+    /**
+     * Give back these layers with one configuration file, fragment, profile
+     * file or fragment directory read again. Only that file is read again,
+     * along with any fragments that have newly appeared next to it, or the
+     * new profile's files if the profile changed. A file that no longer
+     * exists is dropped.
+     *
+     * @param path
+     *                 the path of the file or directory that changed.
+     * @return the new layers, or this instance if the path is not one that
+     *         Gumshoe reads.
+     * @throws IOException
+     *                              thrown if the file could not be read.
+     * @throws Gumshoe.GumshoeException
+     *                              thrown if the options no longer meet the
+     *                              schema.
+     */
+    public GumshoeLayers withFileChanged(final String path)
+            throws IOException, Gumshoe.GumshoeException {
+        Map<String, Properties> newFiles = null;
+        Map<String, List<String>> newListings = null;
+        Map<String, Properties> newProfileFiles = null;
+        for (ConfigLocation location : configLocations) {
+            if (profile != null && Gumshoe.profilePath(location.getPath(),
+                    profile).equals(path)) {
+                if (newProfileFiles == null) {
+                    newProfileFiles = new HashMap<String, Properties>(
+                            profileFiles);
+                }
+                Properties loaded = gumshoe.loadFileIfExists(path, true);
+                if (loaded == null) {
+                    newProfileFiles.remove(path);
+                } else {
+                    newProfileFiles.put(path, loaded);
+                }
+            }
+            if (location.getPath().equals(path)) {
+                if (newFiles == null) {
+                    newFiles = new HashMap<String, Properties>(files);
+                }
+                Properties loaded = gumshoe.loadFileIfExists(path, true);
+                if (loaded == null) {
+                    newFiles.remove(path);
+                } else {
+                    newFiles.put(path, loaded);
+                }
+            }
+            String directory = location.getFragmentDirectory();
+            if (directory == null || !(directory.equals(path)
+                    || isInDirectory(directory, path))) {
+                continue;
+            }
+            if (newFiles == null) {
+                newFiles = new HashMap<String, Properties>(files);
+            }
+            if (newListings == null) {
+                newListings = new HashMap<String, List<String>>(listings);
+            }
+            List<String> fragments = gumshoe.listFragments(directory, true);
+            for (String fragment : newListings.get(directory)) {
+                newFiles.remove(fragment);
+            }
+            newListings.put(directory, fragments);
+            for (String fragment : fragments) {
+                Properties loaded = files.get(fragment);
+                if (loaded == null || fragment.equals(path)) {
+                    loaded = gumshoe.loadFile(fragment, fragment.equals(path));
+                }
+                newFiles.put(fragment, loaded);
+            }
+        }
+        if (newFiles == null && newProfileFiles == null) {
+            return this;
+        }
+        return new GumshoeLayers(gumshoe, aliases, configLocations,
+                environmentVariables,
+                newFiles == null ? files
+                        : Collections.unmodifiableMap(newFiles),
+                newListings == null ? listings
+                        : Collections.unmodifiableMap(newListings),
+                argumentLayer, profile,
+                newProfileFiles == null ? profileFiles
+                        : Collections.unmodifiableMap(newProfileFiles));
+    }
+
+    /**
+     * Getter for the paths of every configuration file and fragment in these
+     * layers, not counting profile files.
+     *
+     * @return an unmodifiable set of paths.
+     */
+    public Set<String> getFiles() {
+        return this.files.keySet();
+    }
+
+    /**
+     * Getter for the active profile.
+     *
+     * @return the profile, or <code>null</code> if there is none.
+     */
+    public String getProfile() {
+        return this.profile;
+    }
+}
@@ -1,5 +1,7 @@
 package io.github.djhaskin987.gumshoe;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Properties;
 
@@ -17,6 +19,17 @@ public final class GumshoeReturn {
      * Represents the options that were gathered by Gumshoe.
      */
     private Properties optionsMap;
+    /**
+     * Represents the options that were gathered by Gumshoe, when they are
+     * held in compact storage. <code>optionsMap</code> is then a view of it.
+     */
+    private CompactProperties compactOptions;
+    /**
+     * A compact copy of <code>optionsMap</code>, made the first time
+     * <code>getCompactOptions</code> is called on an object that is not
+     * backed by compact storage.
+     */
+    private CompactProperties compactCopy;
 
     /**
      * Instance factory for the <code>GumshoeReturn</code> class.
@@ -46,6 +59,135 @@ public final class GumshoeReturn {
         optionsMap = givenOptionsMap;
     }
 
+    /**
+     * Constructor for a <code>GumshoeReturn</code> backed by compact storage.
+     *
+     * @param givenUnusedArguments
+     *                                 the arguments unused by Gumshoe.
+     * @param givenCompactOptions
+     *                                 the options found by Gumshoe.
+     */
+    private GumshoeReturn(final List<String> givenUnusedArguments,
+            final CompactProperties givenCompactOptions) {
+        unusedArguments = givenUnusedArguments;
+        compactOptions = givenCompactOptions;
+        optionsMap = new CompactPropertiesView(givenCompactOptions);
+    }
+
+    /**
+     * Create a copy of this return value whose options are held in compact
+     * storage instead of in a <code>Properties</code> object. This is worth
+     * doing when the gathered configuration is very large and is kept around
+     * for a long time. The returned object's <code>getOptionsMap</code>
+     * gives back a read-only view that looks options up in the compact
+     * storage, so it costs no more memory.
+     *
+     * @param offHeap
+     *                    whether the compact storage should be allocated
+     *                    outside of the Java heap.
+     * @return a new GumshoeReturn object backed by compact storage.
+     * @since 1.1.0
+     */
+    public GumshoeReturn compact(final boolean offHeap) {
+        CompactProperties compacted = this.compactOptions;
+        if (compacted == null) {
+            compacted = CompactProperties.fromProperties(untrackedOptions(),
+                    offHeap);
+        } else if (compacted.isOffHeap() != offHeap) {
+            compacted = compacted.copy(offHeap);
+        }
+        return new GumshoeReturn(this.unusedArguments, compacted);
+    }
+
+    /**
+     * Create a copy of this return value whose options map counts how often
+     * each option is looked up, with <code>getProperty</code>,
+     * <code>get</code>, <code>getOrDefault</code> or
+     * <code>containsKey</code>. Tracking is
+     * meant for finding out which options are read at all, and which are
+     * read the most; <code>getAccessStatistics</code> reports on it. The
+     * tracked options map holds nothing of its own, so it costs little
+     * memory even over compact storage, and changes made through it are
+     * made to this one's options map.
+     *
+     * @return a new GumshoeReturn object whose options map is a
+     *         <code>TrackedProperties</code> object over this one's.
+     * @since 1.1.0
+     */
+    public GumshoeReturn withAccessTracking() {
+        Properties options = getOptionsMap();
+        if (options instanceof TrackedProperties) {
+            return new GumshoeReturn(unusedArguments, options);
+        }
+        return new GumshoeReturn(unusedArguments,
+                new TrackedProperties(options));
+    }
+
+    /**
+     * Take a snapshot of how often each option has been looked up, if
+     * access tracking is on.
+     *
+     * @return the statistics, or <code>null</code> if this object was not
+     *         made by <code>withAccessTracking</code>.
+     * @since 1.1.0
+     */
+    public AccessStatistics getAccessStatistics() {
+        if (this.optionsMap instanceof TrackedProperties) {
+            return ((TrackedProperties) this.optionsMap)
+                    .getAccessStatistics();
+        }
+        return null;
+    }
+
+    /**
+     * Write the options out in a compact binary format, which
+     * <code>Gumshoe.Builder.importedOptions</code> can read back in, for
+     * instance in a child process. Secrets are not read: only the paths of
+     * their files are written out, and the child reads each one when it is
+     * first looked up, so it must be able to open the same paths.
+     *
+     * @param output
+     *                   where to write the options. It is flushed, not closed.
+     * @throws IOException
+     *                         thrown if the options could not be written.
+     * @since 1.1.0
+     */
+    public void exportBinary(final OutputStream output) throws IOException {
+        OptionsCodec.writeBinary(untrackedOptions(), output);
+    }
+
+    /**
+     * Write the options out as one JSON object of strings, which
+     * <code>Gumshoe.Builder.importedOptions</code> can also read back in.
+     * A secret is written out as an object naming its file, like
+     * <code>{"file":"/run/secrets/db_password"}</code>, and is not read, as
+     * for <code>exportBinary</code>.
+     *
+     * @param output
+     *                   where to write the options, as UTF-8. It is flushed,
+     *                   not closed.
+     * @throws IOException
+     *                         thrown if the options could not be written.
+     * @since 1.1.0
+     */
+    public void exportJson(final OutputStream output) throws IOException {
+        OptionsCodec.writeJson(untrackedOptions(), output);
+    }
+
+    /**
+     * Getter for the options map as it is, without any access tracking, so
+     * that going through every option here does not count as reading it.
+     *
+     * @return the options map, or the one it tracks.
+     */
+    private Properties untrackedOptions() {
+        Properties options = this.optionsMap;
+        if (options instanceof TrackedProperties) {
+            return ((TrackedProperties) options).getWrapped();
+        }
+        return options;
+    }
+
     /**
      * Getter for the unused arguments.
      *
@@ -56,7 +198,8 @@ public final class GumshoeReturn {
     }
 
     /**
-     * Getter for the options map.
+     * Getter for the options map. If this object is backed by compact
+     * storage, the options map is a read-only view of it.
      *
      * @return the options map.
      */
@@ -64,6 +207,26 @@ public final class GumshoeReturn {
         return this.optionsMap;
     }
 
+    /**
+     * Getter for the options in compact form. If this object is not backed by
+     * compact storage, a compact on-heap copy of the options map is made the
+     * first time this is called, and given back after that; it does not see
+     * later changes to the options map.
+     *
+     * @return the compact options.
+     * @since 1.1.0
+     */
+    public synchronized CompactProperties getCompactOptions() {
+        if (this.compactOptions != null) {
+            return this.compactOptions;
+        }
+        if (this.compactCopy == null) {
+            this.compactCopy = CompactProperties.fromProperties(
+                    untrackedOptions(), false);
+        }
+        return this.compactCopy;
+    }
+
     /**
      * Setter for the unused arguments.
      *
@@ -81,7 +244,10 @@ public final class GumshoeReturn {
      * @param givenOptionsMap
      *                            the options map.
      */
-    protected void setOptionsMap(final Properties givenOptionsMap) {
+    protected synchronized void setOptionsMap(
+            final Properties givenOptionsMap) {
         optionsMap = givenOptionsMap;
+        compactOptions = null;
+        compactCopy = null;
     }
 }
@@ -0,0 +1,446 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Constraints that gathered options must meet, made with
+ * <code>GumshoeSchema.builder</code> and given to
+ * <code>Gumshoe.Builder.schema</code>.
+ *
+ * A constraint applies either to one property or, if the name given ends in
+ * <code>.*</code>, to every property under that prefix. Constraints are turned
+ * into checks once, when the schema is built, and every check is then made in
+ * a single pass over the gathered options. Schemas are immutable, and so may
+ * be shared freely across threads.
+ *
+ * Checking that a property is set never reads a secret file. Any other
+ * constraint on a secret property has to read it, when options are gathered;
+ * if the secret file cannot be read, the gather throws an
+ * <code>IOException</code>.
+ *
+ * @since 1.1.0
+ */
+public final class GumshoeSchema {
+
+    /**
+     * Ends property names that stand for every property under a prefix.
+     */
+    private static final String WILDCARD = ".*";
+
+    /**
+     * A check made on the value of a property.
+     */
+    private interface Check {
+        /**
+         * Check a value.
+         *
+         * @param value
+         *                  the value.
+         * @return what is wrong with the value, or <code>null</code> if
+         *         nothing is.
+         */
+        String check(String value);
+    }
+
+    /**
+     * Something wrong with the gathered options.
+     */
+    static final class Violation {
+        /**
+         * The property that is wrong.
+         */
+        private final String property;
+        /**
+         * What is wrong with it.
+         */
+        private final String problem;
+
+        /**
+         * Constructor for the Violation class.
+         *
+         * @param givenProperty
+         *                          the property that is wrong.
+         * @param givenProblem
+         *                          what is wrong with it.
+         */
+        Violation(final String givenProperty, final String givenProblem) {
+            property = givenProperty;
+            problem = givenProblem;
+        }
+
+        /**
+         * Getter for the property that is wrong.
+         *
+         * @return the property.
+         */
+        String getProperty() {
+            return this.property;
+        }
+
+        /**
+         * Getter for what is wrong with the property.
+         *
+         * @return the problem, worded to follow the property's name.
+         */
+        String getProblem() {
+            return this.problem;
+        }
+    }
+
+    /**
+     * Builds GumshoeSchema objects.
+     */
+    public static final class Builder {
+
+        /**
+         * The checks on single properties.
+         */
+        private final Map<String, List<Check>> propertyChecks;
+
+        /**
+         * The checks on every property under a prefix, by prefix.
+         */
+        private final Map<String, List<Check>> prefixChecks;
+
+        /**
+         * The properties that must be set.
+         */
+        private final Set<String> required;
+
+        /**
+         * Pairs of properties that must not both be true.
+         */
+        private final List<String[]> exclusive;
+
+        /**
+         * Constructor for the Builder class.
+         */
+        private Builder() {
+            propertyChecks = new HashMap<String, List<Check>>();
+            prefixChecks = new HashMap<String, List<Check>>();
+            required = new LinkedHashSet<String>();
+            exclusive = new ArrayList<String[]>();
+        }
+
+        /**
+         * Add a check on a property, or on every property under a prefix.
+         *
+         * @param property
+         *                     the property, or a prefix followed by
+         *                     <code>.*</code>.
+         * @param check
+         *                     the check.
+         * @return this builder.
+         */
+        private Builder addCheck(final String property, final Check check) {
+            Map<String, List<Check>> checks = propertyChecks;
+            String key = property;
+            if (property.endsWith(WILDCARD)) {
+                checks = prefixChecks;
+                key = prefix(property);
+            }
+            List<Check> existing = checks.get(key);
+            if (existing == null) {
+                existing = new ArrayList<Check>();
+                checks.put(key, existing);
+            }
+            existing.add(check);
+            return this;
+        }
+
+        /**
+         * Require a property to be set.
+         *
+         * @param property
+         *                     the property, which may not be a prefix.
+         * @return this builder.
+         */
+        public Builder required(final String property) {
+            if (property.endsWith(WILDCARD)) {
+                throw new IllegalArgumentException(
+                        "A prefix cannot be required: " + property);
+            }
+            required.add(property);
+            return this;
+        }
+
+        /**
+         * Require a property to be a whole number between two bounds.
+         *
+         * @param property
+         *                     the property, or a prefix followed by
+         *                     <code>.*</code>.
+         * @param minimum
+         *                     the smallest value allowed.
+         * @param maximum
+         *                     the largest value allowed.
+         * @return this builder.
+         */
+        public Builder range(final String property, final long minimum,
+                final long maximum) {
+            final String problem = "must be a whole number from " + minimum
+                    + " to " + maximum;
+            return addCheck(property, (String value) -> {
+                long number;
+                try {
+                    number = Long.parseLong(value.trim());
+                } catch (NumberFormatException nfe) {
+                    return problem;
+                }
+                if (number < minimum || number > maximum) {
+                    return problem;
+                }
+                return null;
+            });
+        }
+
+        /**
+         * Require a property to match a regular expression in full.
+         *
+         * @param property
+         *                     the property, or a prefix followed by
+         *                     <code>.*</code>.
+         * @param regex
+         *                     the regular expression, which is compiled once.
+         * @return this builder.
+         */
+        public Builder matches(final String property, final String regex) {
+            final Pattern pattern = Pattern.compile(regex);
+            final String problem = "must match " + regex;
+            return addCheck(property, (String value) -> {
+                if (pattern.matcher(value).matches()) {
+                    return null;
+                }
+                return problem;
+            });
+        }
+
+        /**
+         * Require a property to have one of a set of values.
+         *
+         * @param property
+         *                     the property, or a prefix followed by
+         *                     <code>.*</code>.
+         * @param values
+         *                     the values allowed.
+         * @return this builder.
+         */
+        public Builder oneOf(final String property, final String... values) {
+            final Set<String> allowed = Set.copyOf(Arrays.asList(values));
+            final String problem = "must be one of "
+                    + String.join(", ", values);
+            return addCheck(property, (String value) -> {
+                if (allowed.contains(value)) {
+                    return null;
+                }
+                return problem;
+            });
+        }
+
+        /**
+         * Forbid two properties from both being <code>true</code>, as when
+         * both <code>--enable-first</code> and <code>--enable-second</code>
+         * are given.
+         *
+         * @param first
+         *                   the first property.
+         * @param second
+         *                   the second property.
+         * @return this builder.
+         */
+        public Builder exclusive(final String first, final String second) {
+            exclusive.add(new String[] {first, second});
+            return this;
+        }
+
+        /**
+         * Build the schema.
+         *
+         * @return a new GumshoeSchema.
+         */
+        public GumshoeSchema build() {
+            return new GumshoeSchema(this);
+        }
+    }
+
+    /**
+     * The checks on single properties.
+     */
+    private final Map<String, List<Check>> propertyChecks;
+
+    /**
+     * The checks on every property under a prefix, by prefix.
+     */
+    private final Map<String, List<Check>> prefixChecks;
+
+    /**
+     * The properties that must be set.
+     */
+    private final List<String> required;
+
+    /**
+     * Pairs of properties that must not both be true.
+     */
+    private final List<String[]> exclusive;
+
+    /**
+     * Constructor for the GumshoeSchema class.
+     *
+     * @param builder
+     *                    the builder holding the constraints.
+     */
+    private GumshoeSchema(final Builder builder) {
+        propertyChecks = copy(builder.propertyChecks);
+        prefixChecks = copy(builder.prefixChecks);
+        required = List.copyOf(builder.required);
+        exclusive = List.copyOf(builder.exclusive);
+    }
+
+    /**
+     * Make a builder for a schema.
+     *
+     * @return a new Builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Copy a table of checks, so that the schema does not change if its
+     * builder is used again.
+     *
+     * @param checks
+     *                   the table of checks.
+     * @return an unmodifiable copy.
+     */
+    private static Map<String, List<Check>> copy(
+            final Map<String, List<Check>> checks) {
+        Map<String, List<Check>> copied = new HashMap<String, List<Check>>();
+        for (Map.Entry<String, List<Check>> entry : checks.entrySet()) {
+            copied.put(entry.getKey(), List.copyOf(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(copied);
+    }
+
+    /**
+     * Strip the <code>*</code> from a prefix, leaving the dot.
+     *
+     * @param property
+     *                     a prefix followed by <code>.*</code>.
+     * @return the prefix and its dot.
+     */
+    private static String prefix(final String property) {
+        return property.substring(0, property.length() - 1);
+    }
+
+    /**
+     * Run a list of checks on a value.
+     *
+     * @param checks
+     *                       the checks.
+     * @param property
+     *                       the property holding the value.
+     * @param value
+     *                       the value.
+     * @param violations
+     *                       where to add what is wrong.
+     */
+    private static void runChecks(final List<Check> checks,
+            final String property, final String value,
+            final List<Violation> violations) {
+        for (Check check : checks) {
+            String problem = check.check(value);
+            if (problem != null) {
+                violations.add(new Violation(property, problem));
+            }
+        }
+    }
+
+    /**
+     * Look up the value of a property, reading its secret file if it has
+     * one.
+     *
+     * @param options
+     *                     the gathered options.
+     * @param property
+     *                     the property.
+     * @return the value, or <code>null</code> if the property is not set.
+     * @throws IOException
+     *                         thrown if the property's secret file could not
+     *                         be read.
+     */
+    private static String valueOf(final Properties options,
+            final String property) throws IOException {
+        try {
+            return options.getProperty(property);
+        } catch (UncheckedIOException uioe) {
+            throw new IOException(uioe.getMessage(), uioe.getCause());
+        }
+    }
+
+    /**
+     * Check gathered options against the schema.
+     *
+     * @param options
+     *                    the gathered options.
+     * @return everything wrong with the options, sorted by property. The list
+     *         is empty if nothing is.
+     * @throws IOException
+     *                         thrown if the secret file of a property with
+     *                         a constraint on its value could not be read.
+     */
+    List<Violation> check(final Properties options) throws IOException {
+        List<Violation> violations = new ArrayList<Violation>();
+        for (String property : required) {
+            if (!options.containsKey(property)) {
+                violations.add(new Violation(property,
+                        "is required but was not set"));
+            }
+        }
+        for (String[] pair : exclusive) {
+            if ("true".equals(valueOf(options, pair[0]))
+                    && "true".equals(valueOf(options, pair[1]))) {
+                violations.add(new Violation(pair[0],
+                        "cannot be enabled together with " + pair[1]));
+            }
+        }
+        if (propertyChecks.isEmpty() && prefixChecks.isEmpty()) {
+            return violations;
+        }
+        for (String property : options.stringPropertyNames()) {
+            String value = null;
+            List<Check> checks = propertyChecks.get(property);
+            if (checks != null) {
+                value = valueOf(options, property);
+                runChecks(checks, property, value, violations);
+            }
+            if (prefixChecks.isEmpty()) {
+                continue;
+            }
+            for (int dot = property.indexOf('.'); dot >= 0;
+                    dot = property.indexOf('.', dot + 1)) {
+                checks = prefixChecks.get(property.substring(0, dot + 1));
+                if (checks != null) {
+                    if (value == null) {
+                        value = valueOf(options, property);
+                    }
+                    runChecks(checks, property, value, violations);
+                }
+            }
+        }
+        violations.sort(Comparator.comparing(Violation::getProperty));
+        return violations;
+    }
+}
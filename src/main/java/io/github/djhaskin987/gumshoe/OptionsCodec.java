@@ -0,0 +1,523 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Writes gathered options out, and reads them back in, so that one process
+ * can hand its options to another without the other having to gather them
+ * again.
+ *
+ * There are two formats. The binary format is the bytes of
+ * <code>MAGIC</code>, the number of options, and then for each option its
+ * key, a byte that is <code>SECRET</code> if the option is a secret and
+ * <code>VALUE</code> if not, and its value or the path of its secret file.
+ * Strings are a length in bytes followed by that many bytes of UTF-8; every
+ * number is a big-endian <code>int</code>. The JSON format is one object
+ * whose values are strings, or for a secret, an object like
+ * <code>{"file":"/run/secrets/db_password"}</code>. Both are written in key
+ * order. When reading, the format is told apart by its first bytes.
+ *
+ * Secrets are never read to be written out: only the paths of their files
+ * are, so what is read back in is a <code>SecretProperties</code> object that
+ * reads each secret file when it is first looked up, and keeps it redacted.
+ */
+final class OptionsCodec {
+
+    /**
+     * Starts every options file in the binary format.
+     */
+    private static final byte[] MAGIC = {'G', 'M', 'S', 'H', 1};
+
+    /**
+     * The largest character that must be escaped in JSON strings.
+     */
+    private static final char LAST_CONTROL = 0x1f;
+
+    /**
+     * How many hex digits a JSON <code>\\u</code> escape has.
+     */
+    private static final int HEX_DIGITS = 4;
+
+    /**
+     * The radix of hexadecimal numbers.
+     */
+    private static final int HEX = 16;
+
+    /**
+     * Marks the end of a JSON file.
+     */
+    private static final int END = -1;
+
+    /**
+     * Marks an option's value in the binary format.
+     */
+    private static final int VALUE = 0;
+
+    /**
+     * Marks the path of a secret option's file in the binary format.
+     */
+    private static final int SECRET = 1;
+
+    /**
+     * The key naming the path of a secret file in the JSON format.
+     */
+    private static final String SECRET_FILE = "file";
+
+    /**
+     * The JSON file being read.
+     */
+    private final Reader reader;
+
+    /**
+     * The next character to be parsed, already read.
+     */
+    private int next;
+
+    /**
+     * Constructor for the OptionsCodec class, which only parses JSON.
+     *
+     * @param givenReader
+     *                        the JSON file.
+     * @throws IOException
+     *                         thrown if the file could not be read.
+     */
+    private OptionsCodec(final Reader givenReader) throws IOException {
+        reader = givenReader;
+        next = reader.read();
+    }
+
+    /**
+     * Find the secret file behind each secret option.
+     *
+     * @param options
+     *                    the options.
+     * @return the secret files, by property name.
+     */
+    private static Map<String, String> secretPathsOf(
+            final Properties options) {
+        if (options instanceof SecretProperties) {
+            return ((SecretProperties) options).getSecretPaths();
+        }
+        if (options instanceof CompactPropertiesView) {
+            return ((CompactPropertiesView) options).getSecretPaths();
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Write options in the binary format.
+     *
+     * @param options
+     *                    the options.
+     * @param output
+     *                    where to write them. It is flushed, not closed.
+     * @throws IOException
+     *                         thrown if the options could not be written.
+     */
+    static void writeBinary(final Properties options,
+            final OutputStream output) throws IOException {
+        TreeSet<String> keys = new TreeSet<String>(
+                options.stringPropertyNames());
+        DataOutputStream data = new DataOutputStream(
+                new BufferedOutputStream(output));
+        Map<String, String> secretPaths = secretPathsOf(options);
+        data.write(MAGIC);
+        data.writeInt(keys.size());
+        for (String key : keys) {
+            writeString(data, key);
+            String path = secretPaths.get(key);
+            if (path == null) {
+                data.writeByte(VALUE);
+                writeString(data, options.getProperty(key));
+            } else {
+                data.writeByte(SECRET);
+                writeString(data, path);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Write one string in the binary format.
+     *
+     * @param data
+     *                  where to write it.
+     * @param value
+     *                  the string.
+     * @throws IOException
+     *                         thrown if the string could not be written.
+     */
+    private static void writeString(final DataOutputStream data,
+            final String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * Write options as a JSON object, one option at a time.
+     *
+     * @param options
+     *                    the options.
+     * @param output
+     *                    where to write them, as UTF-8. It is flushed, not
+     *                    closed.
+     * @throws IOException
+     *                         thrown if the options could not be written.
+     */
+    static void writeJson(final Properties options,
+            final OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        Map<String, String> secretPaths = secretPathsOf(options);
+        writer.write('{');
+        boolean first = true;
+        for (String key : new TreeSet<String>(options.stringPropertyNames())) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writeJsonString(writer, key);
+            writer.write(':');
+            String path = secretPaths.get(key);
+            if (path == null) {
+                writeJsonString(writer, options.getProperty(key));
+            } else {
+                writer.write('{');
+                writeJsonString(writer, SECRET_FILE);
+                writer.write(':');
+                writeJsonString(writer, path);
+                writer.write('}');
+            }
+        }
+        writer.write('}');
+        writer.flush();
+    }
+
+    /**
+     * Write one string as a quoted JSON string.
+     *
+     * @param writer
+     *                   where to write it.
+     * @param value
+     *                   the string.
+     * @throws IOException
+     *                         thrown if the string could not be written.
+     */
+    private static void writeJsonString(final Writer writer,
+            final String value) throws IOException {
+        writer.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c > LAST_CONTROL) {
+                continue;
+            }
+            writer.write(value, start, i - start);
+            start = i + 1;
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c == '\n') {
+                writer.write("\\n");
+            } else if (c == '\r') {
+                writer.write("\\r");
+            } else if (c == '\t') {
+                writer.write("\\t");
+            } else {
+                writer.write(String.format("\\u%04x", (int) c));
+            }
+        }
+        writer.write(value, start, value.length() - start);
+        writer.write('"');
+    }
+
+    /**
+     * Read options written in either format.
+     *
+     * @param input
+     *                     the options file. It is not closed.
+     * @param resolver
+     *                     reads the secret files of secret options, or
+     *                     <code>null</code> if there must be none.
+     * @return the options, which are a <code>SecretProperties</code> object
+     *         if any of them are secrets.
+     * @throws IOException
+     *                         thrown if the file could not be read, is in
+     *                         neither format, or holds secrets when there is
+     *                         nothing to read them.
+     */
+    static Properties read(final InputStream input,
+            final SecretResolver resolver) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(input);
+        buffered.mark(MAGIC.length);
+        byte[] start = buffered.readNBytes(MAGIC.length);
+        Properties options = new Properties();
+        Map<String, String> secretPaths = new HashMap<String, String>();
+        if (Arrays.equals(start, MAGIC)) {
+            readBinary(new DataInputStream(buffered), options, secretPaths);
+        } else {
+            buffered.reset();
+            new OptionsCodec(new BufferedReader(new InputStreamReader(
+                    buffered, StandardCharsets.UTF_8)))
+                    .parseObject(options, secretPaths);
+        }
+        if (secretPaths.isEmpty()) {
+            return options;
+        }
+        if (resolver == null) {
+            throw new IOException("Options file holds secrets, but they "
+                    + "cannot be read here.");
+        }
+        SecretProperties secrets = new SecretProperties(resolver);
+        secrets.putAll(options);
+        for (Map.Entry<String, String> secret : secretPaths.entrySet()) {
+            secrets.setSecret(secret.getKey(), secret.getValue());
+        }
+        return secrets;
+    }
+
+    /**
+     * Read options in the binary format, after its magic bytes.
+     *
+     * @param data
+     *                        the options file.
+     * @param options
+     *                        where to put the options that are not secrets.
+     * @param secretPaths
+     *                        where to put the secret file behind each secret
+     *                        option.
+     * @throws IOException
+     *                         thrown if the file could not be read or was cut
+     *                         short.
+     */
+    private static void readBinary(final DataInputStream data,
+            final Properties options, final Map<String, String> secretPaths)
+            throws IOException {
+        int count = data.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt options file.");
+        }
+        for (int i = 0; i < count; i++) {
+            String key = readString(data);
+            int kind = data.readUnsignedByte();
+            if (kind == VALUE) {
+                options.setProperty(key, readString(data));
+            } else if (kind == SECRET) {
+                secretPaths.put(key, readString(data));
+            } else {
+                throw new IOException("Corrupt options file.");
+            }
+        }
+    }
+
+    /**
+     * Read one string in the binary format.
+     *
+     * @param data
+     *                 the options file.
+     * @return the string.
+     * @throws IOException
+     *                         thrown if the file could not be read or was cut
+     *                         short.
+     */
+    private static String readString(final DataInputStream data)
+            throws IOException {
+        int length = data.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt options file.");
+        }
+        byte[] bytes = data.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException("Options file was cut short.");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Move past any whitespace.
+     *
+     * @throws IOException
+     *                         thrown if the file could not be read.
+     */
+    private void skipWhitespace() throws IOException {
+        while (next == ' ' || next == '\t' || next == '\n' || next == '\r') {
+            next = reader.read();
+        }
+    }
+
+    /**
+     * Move past an expected character, after any whitespace.
+     *
+     * @param expected
+     *                     the character.
+     * @throws IOException
+     *                         thrown if the file could not be read, or the
+     *                         character is not there.
+     */
+    private void expect(final char expected) throws IOException {
+        skipWhitespace();
+        if (next != expected) {
+            throw new IOException("Not an options file: expected '"
+                    + expected + "'.");
+        }
+        next = reader.read();
+    }
+
+    /**
+     * Parse a JSON object whose values are strings, or objects naming secret
+     * files.
+     *
+     * @param options
+     *                        where to put the options that are not secrets.
+     * @param secretPaths
+     *                        where to put the secret file behind each secret
+     *                        option.
+     * @throws IOException
+     *                         thrown if the file could not be read or is not
+     *                         such an object.
+     */
+    private void parseObject(final Properties options,
+            final Map<String, String> secretPaths) throws IOException {
+        expect('{');
+        skipWhitespace();
+        if (next == '}') {
+            next = reader.read();
+        } else {
+            while (true) {
+                String key = parseString();
+                expect(':');
+                skipWhitespace();
+                if (next == '{') {
+                    secretPaths.put(key, parseSecretFile());
+                } else {
+                    options.setProperty(key, parseString());
+                }
+                skipWhitespace();
+                if (next == '}') {
+                    next = reader.read();
+                    break;
+                }
+                expect(',');
+            }
+        }
+        skipWhitespace();
+        if (next != END) {
+            throw new IOException("Not an options file: text after the "
+                    + "object.");
+        }
+    }
+
+    /**
+     * Parse a JSON object naming a secret file, like
+     * <code>{"file":"/run/secrets/db_password"}</code>.
+     *
+     * @return the path of the secret file.
+     * @throws IOException
+     *                         thrown if the file could not be read or there is
+     *                         no such object.
+     */
+    private String parseSecretFile() throws IOException {
+        expect('{');
+        if (!SECRET_FILE.equals(parseString())) {
+            throw new IOException("Not an options file: bad secret.");
+        }
+        expect(':');
+        String path = parseString();
+        expect('}');
+        return path;
+    }
+
+    /**
+     * Parse a JSON string.
+     *
+     * @return the string.
+     * @throws IOException
+     *                         thrown if the file could not be read or there is
+     *                         no string.
+     */
+    private String parseString() throws IOException {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (next != '"') {
+            if (next == END || next <= LAST_CONTROL) {
+                throw new IOException("Not an options file: bad string.");
+            }
+            if (next == '\\') {
+                next = reader.read();
+                switch (next) {
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'u':
+                    value.append(parseHex());
+                    break;
+                case '"':
+                case '\\':
+                case '/':
+                    value.append((char) next);
+                    break;
+                default:
+                    throw new IOException("Not an options file: bad escape.");
+                }
+            } else {
+                value.append((char) next);
+            }
+            next = reader.read();
+        }
+        next = reader.read();
+        return value.toString();
+    }
+
+    /**
+     * Parse the hex digits of a <code>\\u</code> escape.
+     *
+     * @return the character they stand for.
+     * @throws IOException
+     *                         thrown if the file could not be read or the
+     *                         digits are not hex.
+     */
+    private char parseHex() throws IOException {
+        int code = 0;
+        for (int i = 0; i < HEX_DIGITS; i++) {
+            int digit = Character.digit(reader.read(), HEX);
+            if (digit < 0) {
+                throw new IOException("Not an options file: bad escape.");
+            }
+            code = code * HEX + digit;
+        }
+        return (char) code;
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Gumshoe that has been prepared for one program, made by
+ * <code>Gumshoe.builder</code>.
+ *
+ * Everything that does not depend on the command line arguments -- the
+ * upper-cased program name, the program's environment variables and the list
+ * of candidate configuration files -- is worked out once, when the instance is
+ * built; if options are imported, none of it is looked for. Instances may
+ * be shared freely across threads; <code>gatherOptions</code> takes no locks,
+ * other than a brief one when options are imported.
+ *
+ * Configuration files and fragment directories are remembered with their
+ * modification times, and only read again once those change. A file rewritten
+ * without its modification time changing, as can happen within the
+ * resolution of the file system's clock, is not noticed; use
+ * <code>GumshoeLayers.withFileChanged</code> to read it again regardless.
+ *
+ * @since 1.1.0
+ */
+public final class PreparedGumshoe {
+
+    /**
+     * The Gumshoe instance that does the actual gathering.
+     */
+    private final Gumshoe gumshoe;
+
+    /**
+     * The name of the program that is using Gumshoe.
+     */
+    private final String programName;
+
+    /**
+     * The command line aliases.
+     */
+    private final Map<String, String> aliases;
+
+    /**
+     * The program's environment variables.
+     */
+    private final List<EnvironmentPartition.Variable> environmentVariables;
+
+    /**
+     * The configuration locations to try, in the order they are merged.
+     */
+    private final List<ConfigLocation> configLocations;
+
+    /**
+     * The configuration files to try, in the order they are merged.
+     */
+    private final List<String> configCandidates;
+
+    /**
+     * Constructor used by <code>Gumshoe.Builder</code>.
+     *
+     * @param givenGumshoe
+     *                            the Gumshoe instance to gather with.
+     * @param givenProgramName
+     *                            the name of the program using Gumshoe.
+     * @param givenAliases
+     *                            the command line aliases, already copied.
+     */
+    PreparedGumshoe(final Gumshoe givenGumshoe, final String givenProgramName,
+            final Map<String, String> givenAliases) {
+        gumshoe = givenGumshoe;
+        programName = givenProgramName;
+        aliases = givenAliases;
+        String upperName = givenProgramName.toUpperCase();
+        if (givenGumshoe.importsOptions()) {
+            environmentVariables = List.of();
+            configLocations = List.of();
+        } else {
+            environmentVariables = givenGumshoe.findEnvironment(upperName);
+            configLocations = List.copyOf(givenGumshoe
+                    .findConfigCandidates(givenProgramName, upperName));
+        }
+        List<String> paths = new ArrayList<String>();
+        for (ConfigLocation location : configLocations) {
+            paths.add(location.getPath());
+        }
+        configCandidates = Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * Getter for the program name.
+     *
+     * @return the name of the program this instance was prepared for.
+     */
+    public String getProgramName() {
+        return this.programName;
+    }
+
+    /**
+     * Getter for the configuration files that are tried, in the order their
+     * properties are merged.
+     *
+     * @return an unmodifiable list of candidate paths.
+     */
+    public List<String> getConfigCandidates() {
+        return this.configCandidates;
+    }
+
+    /**
+     * Gather options just as <code>Gumshoe.gatherOptions</code> does, using
+     * the program name and aliases this instance was built with.
+     *
+     * @param arguments
+     *                      the arguments given to the program over the
+     *                      command line.
+     * @throws IOException
+     *                              throws IOException if a configuration file
+     *                              could not be opened.
+     * @throws Gumshoe.GumshoeException
+     *                              throws GumshoeException if the command line
+     *                              could not be parsed, or the options do not
+     *                              meet the schema.
+     * @return a GumshoeReturn object, from which the unparsed arguments and the
+     *         merged Properties instance can be obtained.
+     */
+    public GumshoeReturn gatherOptions(final String[] arguments)
+            throws IOException, Gumshoe.GumshoeException {
+        return gumshoe.gather(configLocations, environmentVariables, aliases,
+                arguments);
+    }
+
+    /**
+     * Gather options just as <code>gatherOptions</code> does, but keep each
+     * layer the options were merged from, so that later only the layer that
+     * changed needs to be worked out again.
+     *
+     * @param arguments
+     *                      the arguments given to the program over the
+     *                      command line.
+     * @throws IOException
+     *                              throws IOException if a configuration file
+     *                              could not be opened.
+     * @throws Gumshoe.GumshoeException
+     *                              throws GumshoeException if the command line
+     *                              could not be parsed, or the options do not
+     *                              meet the schema.
+     * @return the layers, from which the merged result can be obtained.
+     */
+    public GumshoeLayers gatherLayers(final String[] arguments)
+            throws IOException, Gumshoe.GumshoeException {
+        return GumshoeLayers.gather(gumshoe, aliases, configLocations,
+                environmentVariables, arguments);
+    }
+}
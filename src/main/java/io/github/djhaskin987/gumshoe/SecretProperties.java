@@ -0,0 +1,337 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A <code>Properties</code> object in which some values are held in secret
+ * files and are only read when they are looked up.
+ *
+ * In the underlying table, a secret property's value is the placeholder
+ * <code>REDACTED</code>. Only <code>getProperty</code> gives back the real
+ * value, so secrets never show up when the object is printed, listed, stored
+ * or iterated over. Setting or removing a secret property, by any method,
+ * forgets the secret file. A clone has its own secret files, so changing it
+ * does not change the original. Serializing the object writes an ordinary
+ * <code>Properties</code> copy, with the secrets still redacted.
+ *
+ * @since 1.1.0
+ */
+public final class SecretProperties extends Properties {
+
+    /**
+     * What secret values look like everywhere except
+     * <code>getProperty</code>.
+     */
+    public static final String REDACTED = "<redacted>";
+
+    /**
+     * Included to avoid compiler errors.
+     */
+    private static final long serialVersionUID = 4807785939614651370L;
+
+    /**
+     * Reads and remembers the secret files.
+     */
+    private final transient SecretResolver resolver;
+
+    /**
+     * The secret file behind each secret property. It is only replaced when
+     * the object is cloned.
+     */
+    private transient Map<String, String> secretPaths;
+
+    /**
+     * Constructor for the SecretProperties class.
+     *
+     * @param givenResolver
+     *                          reads and remembers the secret files.
+     */
+    SecretProperties(final SecretResolver givenResolver) {
+        resolver = givenResolver;
+        secretPaths = new HashMap<String, String>();
+    }
+
+    /**
+     * Set a property whose value will be read from a file when it is first
+     * looked up.
+     *
+     * @param key
+     *                 the name of the property.
+     * @param path
+     *                 the path of the file holding the property's value.
+     */
+    synchronized void setSecret(final String key, final String path) {
+        super.put(key, REDACTED);
+        secretPaths.put(key, path);
+    }
+
+    /**
+     * Getter for the secret file behind each secret property.
+     *
+     * @return an unmodifiable copy, by property name.
+     */
+    synchronized Map<String, String> getSecretPaths() {
+        Map<String, String> paths = new HashMap<String, String>();
+        for (Map.Entry<String, String> secret : secretPaths.entrySet()) {
+            if (REDACTED.equals(super.get(secret.getKey()))) {
+                paths.put(secret.getKey(), secret.getValue());
+            }
+        }
+        return Collections.unmodifiableMap(paths);
+    }
+
+    /**
+     * Getter for what reads and remembers the secret files.
+     *
+     * @return the resolver.
+     */
+    SecretResolver getResolver() {
+        return this.resolver;
+    }
+
+    /**
+     * Check whether a property's value is held in a secret file.
+     *
+     * @param key
+     *                the name of the property.
+     * @return whether or not the property is a secret.
+     */
+    public synchronized boolean isSecret(final String key) {
+        return secretPaths.containsKey(key);
+    }
+
+    /**
+     * Look up a property, reading its secret file if it has one and the file
+     * has not been read yet.
+     *
+     * @param key
+     *                the name of the property.
+     * @return the value of the property.
+     * @throws UncheckedIOException
+     *                                  if the property's secret file could not
+     *                                  be read.
+     */
+    @Override
+    public String getProperty(final String key) {
+        String path;
+        synchronized (this) {
+            path = secretPaths.get(key);
+        }
+        if (path == null || !REDACTED.equals(super.get(key))) {
+            return super.getProperty(key);
+        }
+        try {
+            return resolver.resolve(path);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(
+                    "Could not read the secret for " + key, ioe);
+        }
+    }
+
+    /**
+     * Set a property, forgetting any secret file it had.
+     */
+    @Override
+    public synchronized Object put(final Object key, final Object value) {
+        secretPaths.remove(key);
+        return super.put(key, value);
+    }
+
+    /**
+     * Set many properties, forgetting any secret files they had.
+     */
+    @Override
+    public synchronized void putAll(final Map<?, ?> entries) {
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Remove a property, forgetting any secret file it had.
+     */
+    @Override
+    public synchronized Object remove(final Object key) {
+        secretPaths.remove(key);
+        return super.remove(key);
+    }
+
+    /**
+     * Remove a property if it has the given value, forgetting any secret file
+     * it had.
+     */
+    @Override
+    public synchronized boolean remove(final Object key, final Object value) {
+        if (!super.containsKey(key) || !Objects.equals(super.get(key), value)) {
+            return false;
+        }
+        remove(key);
+        return true;
+    }
+
+    /**
+     * Remove all properties and secret files.
+     */
+    @Override
+    public synchronized void clear() {
+        secretPaths.clear();
+        super.clear();
+    }
+
+    /**
+     * Set a property if it is not set, forgetting any secret file it had.
+     */
+    @Override
+    public synchronized Object putIfAbsent(final Object key,
+            final Object value) {
+        Object existing = super.get(key);
+        if (existing == null) {
+            put(key, value);
+        }
+        return existing;
+    }
+
+    /**
+     * Set a property if it is set, forgetting any secret file it had.
+     */
+    @Override
+    public synchronized Object replace(final Object key, final Object value) {
+        if (!super.containsKey(key)) {
+            return null;
+        }
+        return put(key, value);
+    }
+
+    /**
+     * Set a property if it has the given value, forgetting any secret file
+     * it had.
+     */
+    @Override
+    public synchronized boolean replace(final Object key,
+            final Object oldValue, final Object newValue) {
+        if (!super.containsKey(key)
+                || !Objects.equals(super.get(key), oldValue)) {
+            return false;
+        }
+        put(key, newValue);
+        return true;
+    }
+
+    /**
+     * Set every property to a new value, forgetting every secret file.
+     */
+    @Override
+    public synchronized void replaceAll(
+            final BiFunction<? super Object, ? super Object, ?> function) {
+        for (Map.Entry<Object, Object> entry
+                : new ArrayList<Map.Entry<Object, Object>>(entrySet())) {
+            put(entry.getKey(),
+                    function.apply(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Work out a property's new value from its old one, forgetting any
+     * secret file it had.
+     */
+    @Override
+    public synchronized Object compute(final Object key,
+            final BiFunction<? super Object, ? super Object, ?> function) {
+        Object existing = super.get(key);
+        Object value = function.apply(key, existing);
+        if (value != null) {
+            put(key, value);
+        } else if (existing != null) {
+            remove(key);
+        }
+        return value;
+    }
+
+    /**
+     * Work out a property's value if it is not set.
+     */
+    @Override
+    public synchronized Object computeIfAbsent(final Object key,
+            final Function<? super Object, ?> function) {
+        Object existing = super.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        Object value = function.apply(key);
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Work out a property's new value if it is set, forgetting any secret
+     * file it had.
+     */
+    @Override
+    public synchronized Object computeIfPresent(final Object key,
+            final BiFunction<? super Object, ? super Object, ?> function) {
+        Object existing = super.get(key);
+        if (existing == null) {
+            return null;
+        }
+        Object value = function.apply(key, existing);
+        if (value != null) {
+            put(key, value);
+        } else {
+            remove(key);
+        }
+        return value;
+    }
+
+    /**
+     * Merge a value into a property, forgetting any secret file it had.
+     */
+    @Override
+    public synchronized Object merge(final Object key, final Object value,
+            final BiFunction<? super Object, ? super Object, ?> function) {
+        Object existing = super.get(key);
+        Object merged = value;
+        if (existing != null) {
+            merged = function.apply(existing, value);
+        }
+        if (merged != null) {
+            put(key, merged);
+        } else {
+            remove(key);
+        }
+        return merged;
+    }
+
+    /**
+     * Make a copy with its own secret files, so that changing one does not
+     * change the other.
+     */
+    @Override
+    public synchronized Object clone() {
+        SecretProperties copy = (SecretProperties) super.clone();
+        copy.secretPaths = new HashMap<String, String>(secretPaths);
+        return copy;
+    }
+
+    /**
+     * Serialize an ordinary copy in place of this object, with the secrets
+     * still redacted. The secret files are not read.
+     *
+     * @return a new <code>Properties</code> object.
+     */
+    private synchronized Object writeReplace() {
+        Properties copy = new Properties();
+        copy.putAll(this);
+        return copy;
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads secret values out of files, such as those mounted under
+ * <code>/run/secrets</code>, and remembers them. A secret file is only read
+ * the first time its value is asked for, and is read at most once for as long
+ * as it stays in the cache.
+ *
+ * Secret files larger than <code>MAX_SECRET_BYTES</code> are refused, and no
+ * more than <code>MAX_CACHED_SECRETS</code> values are remembered; past that,
+ * secrets are read again each time they are asked for. Trailing line breaks
+ * are removed from secret values, since most tools that write secret files
+ * leave one there.
+ */
+final class SecretResolver {
+
+    /**
+     * The largest secret file, in bytes, that will be read.
+     */
+    static final int MAX_SECRET_BYTES = 64 * 1024;
+
+    /**
+     * The most secret values that will be remembered at once.
+     */
+    static final int MAX_CACHED_SECRETS = 1024;
+
+    /**
+     * The size of the buffer used to read secret files.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * The ConfigFinder used to open secret files.
+     */
+    private final ConfigFinder finder;
+
+    /**
+     * Secret values that have already been read, by path.
+     */
+    private final Map<String, String> cache;
+
+    /**
+     * Constructor for the SecretResolver class.
+     *
+     * @param givenFinder
+     *                        the ConfigFinder used to open secret files. It
+     *                        must be safe to use from many threads at once.
+     */
+    SecretResolver(final ConfigFinder givenFinder) {
+        finder = givenFinder;
+        cache = new ConcurrentHashMap<String, String>();
+    }
+
+    /**
+     * Get the value of the secret held in the file at <code>path</code>,
+     * reading it if it has not been read before.
+     *
+     * @param path
+     *                 the path of the secret file.
+     * @return the secret value.
+     * @throws IOException
+     *                         thrown if the file could not be read or is too
+     *                         large.
+     */
+    String resolve(final String path) throws IOException {
+        String value = cache.get(path);
+        if (value != null) {
+            return value;
+        }
+        value = read(path);
+        if (cache.size() < MAX_CACHED_SECRETS) {
+            cache.putIfAbsent(path, value);
+        }
+        return value;
+    }
+
+    /**
+     * Read the secret file at <code>path</code>.
+     *
+     * @param path
+     *                 the path of the secret file.
+     * @return the secret value, without any trailing line breaks.
+     * @throws IOException
+     *                         thrown if the file could not be read or is too
+     *                         large.
+     */
+    private String read(final String path) throws IOException {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream secretFile = finder.getInputStream(path)) {
+            int count = secretFile.read(buffer);
+            while (count != -1) {
+                contents.write(buffer, 0, count);
+                if (contents.size() > MAX_SECRET_BYTES) {
+                    throw new IOException("Secret file " + path
+                            + " is larger than " + MAX_SECRET_BYTES
+                            + " bytes.");
+                }
+                count = secretFile.read(buffer);
+            }
+        }
+        String value = new String(contents.toByteArray(),
+                StandardCharsets.UTF_8);
+        int end = value.length();
+        while (end > 0 && (value.charAt(end - 1) == '\n'
+                || value.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        return value.substring(0, end);
+    }
+}
@@ -0,0 +1,402 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A <code>Properties</code> object that counts how often each property is
+ * looked up with <code>getProperty</code>, <code>get</code>,
+ * <code>getOrDefault</code> or <code>containsKey</code>, made by
+ * <code>GumshoeReturn.withAccessTracking</code>.
+ *
+ * Every property starts out with its own counter, so a lookup only has to
+ * find the counter and bump it; counters are striped, so that lookups from
+ * many threads do not fight over them. A tracked object keeps no entries of
+ * its own: every method, including every one that changes the options, goes
+ * to the properties object that was wrapped, so secrets still work, options
+ * held in compact storage stay there and stay read-only, and the two never
+ * disagree. Taking a
+ * snapshot with <code>getAccessStatistics</code> only reads the counters,
+ * and so does not get in the way of lookups. Going through all the
+ * properties, as <code>store</code> or iterating does, is not counted, nor is
+ * compacting or exporting the options through <code>GumshoeReturn</code>.
+ * Cloning or serializing a tracked object copies the wrapped properties
+ * object, without the counts.
+ *
+ * @since 1.1.0
+ */
+public final class TrackedProperties extends Properties {
+
+    /**
+     * Included to avoid compiler errors.
+     */
+    private static final long serialVersionUID = -3296152716471859064L;
+
+    /**
+     * The properties object that was wrapped.
+     */
+    private final transient Properties wrapped;
+
+    /**
+     * How often each property has been looked up, including properties that
+     * were looked up but are not set.
+     */
+    private final transient Map<String, LongAdder> counts;
+
+    /**
+     * Constructor for the TrackedProperties class.
+     *
+     * @param givenWrapped
+     *                         the properties object to wrap, which holds
+     *                         the options and is changed through this one.
+     */
+    TrackedProperties(final Properties givenWrapped) {
+        wrapped = givenWrapped;
+        counts = new ConcurrentHashMap<String, LongAdder>();
+        for (String key : givenWrapped.stringPropertyNames()) {
+            counts.put(key, new LongAdder());
+        }
+    }
+
+    /**
+     * Getter for the properties object that was wrapped, which can be read
+     * without counting anything.
+     *
+     * @return the wrapped properties object.
+     */
+    Properties getWrapped() {
+        return wrapped;
+    }
+
+    /**
+     * Count a lookup of a property.
+     *
+     * @param key
+     *                the name of the property.
+     */
+    private void count(final Object key) {
+        if (!(key instanceof String)) {
+            return;
+        }
+        LongAdder count = counts.get(key);
+        if (count == null) {
+            count = counts.computeIfAbsent((String) key,
+                    (String k) -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Look up a property, counting the lookup.
+     *
+     * @param key
+     *                the name of the property.
+     * @return the value of the property.
+     */
+    @Override
+    public String getProperty(final String key) {
+        count(key);
+        return wrapped.getProperty(key);
+    }
+
+    /**
+     * Look up a property as it is stored, counting the lookup.
+     */
+    @Override
+    public Object get(final Object key) {
+        count(key);
+        return wrapped.get(key);
+    }
+
+    /**
+     * Look up a property as it is stored, falling back to a default, and
+     * count the lookup.
+     */
+    @Override
+    public Object getOrDefault(final Object key, final Object defaultValue) {
+        count(key);
+        return wrapped.getOrDefault(key, defaultValue);
+    }
+
+    /**
+     * Check whether a property is set, counting the lookup.
+     */
+    @Override
+    public boolean containsKey(final Object key) {
+        count(key);
+        return wrapped.containsKey(key);
+    }
+
+    /**
+     * Check whether any property has a value.
+     */
+    @Override
+    public boolean containsValue(final Object value) {
+        return wrapped.containsValue(value);
+    }
+
+    /**
+     * Check whether any property has a value.
+     */
+    @Override
+    public boolean contains(final Object value) {
+        return wrapped.contains(value);
+    }
+
+    /**
+     * Getter for the number of properties.
+     */
+    @Override
+    public int size() {
+        return wrapped.size();
+    }
+
+    /**
+     * Check whether there are no properties.
+     */
+    @Override
+    public boolean isEmpty() {
+        return wrapped.isEmpty();
+    }
+
+    /**
+     * List the property names.
+     */
+    @Override
+    public Enumeration<Object> keys() {
+        return wrapped.keys();
+    }
+
+    /**
+     * List the property values.
+     */
+    @Override
+    public Enumeration<Object> elements() {
+        return wrapped.elements();
+    }
+
+    /**
+     * List the property names.
+     */
+    @Override
+    public Enumeration<?> propertyNames() {
+        return wrapped.propertyNames();
+    }
+
+    /**
+     * List the property names.
+     */
+    @Override
+    public Set<String> stringPropertyNames() {
+        return wrapped.stringPropertyNames();
+    }
+
+    /**
+     * View the property names.
+     */
+    @Override
+    public Set<Object> keySet() {
+        return wrapped.keySet();
+    }
+
+    /**
+     * View the property values.
+     */
+    @Override
+    public Collection<Object> values() {
+        return wrapped.values();
+    }
+
+    /**
+     * View the properties.
+     */
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet() {
+        return wrapped.entrySet();
+    }
+
+    /**
+     * Go through every property, without counting any lookups.
+     */
+    @Override
+    public void forEach(
+            final BiConsumer<? super Object, ? super Object> action) {
+        wrapped.forEach(action);
+    }
+
+    /**
+     * Compare with another map, entry by entry.
+     */
+    @Override
+    public boolean equals(final Object other) {
+        return other == this || wrapped.equals(other);
+    }
+
+    /**
+     * Hash the properties as any map would.
+     */
+    @Override
+    public int hashCode() {
+        return wrapped.hashCode();
+    }
+
+    /**
+     * Print the properties as any map would.
+     */
+    @Override
+    public String toString() {
+        return wrapped.toString();
+    }
+
+    /**
+     * Set a property.
+     */
+    @Override
+    public Object put(final Object key, final Object value) {
+        return wrapped.put(key, value);
+    }
+
+    /**
+     * Set many properties.
+     */
+    @Override
+    public void putAll(final Map<?, ?> entries) {
+        wrapped.putAll(entries);
+    }
+
+    /**
+     * Remove a property.
+     */
+    @Override
+    public Object remove(final Object key) {
+        return wrapped.remove(key);
+    }
+
+    /**
+     * Remove a property if it has a value.
+     */
+    @Override
+    public boolean remove(final Object key, final Object value) {
+        return wrapped.remove(key, value);
+    }
+
+    /**
+     * Remove all properties. The counts are kept.
+     */
+    @Override
+    public void clear() {
+        wrapped.clear();
+    }
+
+    /**
+     * Set a property if it is not set.
+     */
+    @Override
+    public Object putIfAbsent(final Object key, final Object value) {
+        return wrapped.putIfAbsent(key, value);
+    }
+
+    /**
+     * Set a property if it is set.
+     */
+    @Override
+    public Object replace(final Object key, final Object value) {
+        return wrapped.replace(key, value);
+    }
+
+    /**
+     * Set a property if it has a value.
+     */
+    @Override
+    public boolean replace(final Object key, final Object oldValue,
+            final Object newValue) {
+        return wrapped.replace(key, oldValue, newValue);
+    }
+
+    /**
+     * Set every property.
+     */
+    @Override
+    public void replaceAll(
+            final BiFunction<? super Object, ? super Object, ?> function) {
+        wrapped.replaceAll(function);
+    }
+
+    /**
+     * Set a property from its value.
+     */
+    @Override
+    public Object compute(final Object key,
+            final BiFunction<? super Object, ? super Object, ?> function) {
+        return wrapped.compute(key, function);
+    }
+
+    /**
+     * Set a property if it is not set.
+     */
+    @Override
+    public Object computeIfAbsent(final Object key,
+            final Function<? super Object, ?> function) {
+        return wrapped.computeIfAbsent(key, function);
+    }
+
+    /**
+     * Set a property from its value if it is set.
+     */
+    @Override
+    public Object computeIfPresent(final Object key,
+            final BiFunction<? super Object, ? super Object, ?> function) {
+        return wrapped.computeIfPresent(key, function);
+    }
+
+    /**
+     * Set a property from its value and another.
+     */
+    @Override
+    public Object merge(final Object key, final Object value,
+            final BiFunction<? super Object, ? super Object, ?> function) {
+        return wrapped.merge(key, value, function);
+    }
+
+    /**
+     * Make a copy of the wrapped properties object, without the counts.
+     *
+     * @return the copy.
+     */
+    @Override
+    public Object clone() {
+        return wrapped.clone();
+    }
+
+    /**
+     * Serialize the wrapped properties object in place of this one, without
+     * the counts.
+     *
+     * @return the wrapped properties object.
+     */
+    private Object writeReplace() {
+        return wrapped;
+    }
+
+    /**
+     * Take a snapshot of how often each property has been looked up.
+     *
+     * @return the statistics.
+     */
+    public AccessStatistics getAccessStatistics() {
+        Map<String, Long> snapshot = new HashMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return new AccessStatistics(snapshot, stringPropertyNames());
+    }
+}
@@ -0,0 +1,182 @@
+package io.github.djhaskin987.gumshoe;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput benchmarks for gathering options. The <code>prepared*</code>
+ * benchmarks share one <code>PreparedGumshoe</code> between every benchmark
+ * thread, so comparing the single-threaded and all-threads scores shows how
+ * gathering scales across cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GumshoeBenchmark {
+
+        /**
+         * Arguments given to every gather.
+         */
+        private static final String[] ARGUMENTS = new String[] {"-z",
+                        "Lord Zed", "--add-a-b-d", "vegitated",
+                        "--enable-fast", "a", "b", "c" };
+
+        /**
+         * Aliases given to every gather.
+         */
+        private static final Map<String, String> ALIASES = Map.of("-z",
+                        "--set-a-b-z");
+
+        /**
+         * Unprepared instance, which works everything out on every call.
+         */
+        private Gumshoe gumshoe;
+
+        /**
+         * Prepared instance, shared between all benchmark threads.
+         */
+        private PreparedGumshoe prepared;
+
+        /**
+         * Gathered options, looked up without access tracking.
+         */
+        private Properties plainOptions;
+
+        /**
+         * The same options, looked up with access tracking.
+         */
+        private Properties trackedOptions;
+
+        /**
+         * Set up both instances over the same mock files and environment.
+         *
+         * @throws Exception
+         *                       never, as files are mocked.
+         */
+        @Setup
+        public void setUp() throws Exception {
+                Map<String, String> mockConfigFiles = Map.of(
+                                "/home/.myprogram/config.properties",
+                                "a.b.c=true",
+                                "/a/b/c/.myprogram/config.properties",
+                                "a.b.c=false\na.b.d=animated");
+                Properties systemProperties = new Properties();
+                systemProperties.putAll(Map.of("file.separator", "/",
+                                "user.home", "/home", "user.dir", "/a/b/c"));
+                Map<String, String> environment = Map.of("MYPROGRAM_A",
+                                "a good grade", "PATH", "/usr/bin:/bin",
+                                "HOME", "/home", "OTHERPROGRAM_A", "no");
+                // MockConfigFinder records every call, which would grow
+                // without bound here, so use a finder that keeps no state.
+                ConfigFinder finder = new ConfigFinder() {
+                        public boolean pathExists(final String path) {
+                                return mockConfigFiles.containsKey(path);
+                        }
+
+                        public InputStream getInputStream(final String path) {
+                                String contents = mockConfigFiles.get(path);
+                                return new ByteArrayInputStream(contents
+                                                .getBytes(UTF_8));
+                        }
+                };
+                gumshoe = new Gumshoe(finder, systemProperties, environment);
+                prepared = Gumshoe.builder().programName("myprogram")
+                                .aliases(ALIASES).configFinder(finder)
+                                .systemProperties(systemProperties)
+                                .environment(environment).build();
+                GumshoeReturn gathered = prepared.gatherOptions(ARGUMENTS);
+                plainOptions = gathered.getOptionsMap();
+                trackedOptions = gathered.withAccessTracking().getOptionsMap();
+        }
+
+        /**
+         * Gather with the unprepared instance on one thread.
+         *
+         * @return the gathered options.
+         * @throws IOException
+         *                              never, as files are mocked.
+         * @throws Gumshoe.GumshoeException
+         *                              never, as the arguments are valid.
+         */
+        @Benchmark
+        @Threads(1)
+        public GumshoeReturn unpreparedSingleThread()
+                        throws IOException, Gumshoe.GumshoeException {
+                return gumshoe.gatherOptions("myprogram", ALIASES, ARGUMENTS);
+        }
+
+        /**
+         * Gather with the prepared instance on one thread.
+         *
+         * @return the gathered options.
+         * @throws IOException
+         *                              never, as files are mocked.
+         * @throws Gumshoe.GumshoeException
+         *                              never, as the arguments are valid.
+         */
+        @Benchmark
+        @Threads(1)
+        public GumshoeReturn preparedSingleThread()
+                        throws IOException, Gumshoe.GumshoeException {
+                return prepared.gatherOptions(ARGUMENTS);
+        }
+
+        /**
+         * Gather with the shared prepared instance on one thread per core.
+         *
+         * @return the gathered options.
+         * @throws IOException
+         *                              never, as files are mocked.
+         * @throws Gumshoe.GumshoeException
+         *                              never, as the arguments are valid.
+         */
+        @Benchmark
+        @Threads(Threads.MAX)
+        public GumshoeReturn preparedAllThreads()
+                        throws IOException, Gumshoe.GumshoeException {
+                return prepared.gatherOptions(ARGUMENTS);
+        }
+
+        /**
+         * Look up an option without access tracking, on one thread per core.
+         *
+         * @return the option's value.
+         */
+        @Benchmark
+        @Threads(Threads.MAX)
+        public String plainLookup() {
+                return plainOptions.getProperty("a.b.d");
+        }
+
+        /**
+         * Look up an option with access tracking, on one thread per core.
+         *
+         * @return the option's value.
+         */
+        @Benchmark
+        @Threads(Threads.MAX)
+        public String trackedLookup() {
+                return trackedOptions.getProperty("a.b.d");
+        }
+}
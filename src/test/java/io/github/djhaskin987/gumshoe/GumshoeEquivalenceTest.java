@@ -0,0 +1,810 @@
+package io.github.djhaskin987.gumshoe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Randomized tests that Gumshoe's optimized paths give exactly the same
+ * results as straightforward reference implementations, written the way
+ * Gumshoe 1.0 worked: regular expressions over the command line and the
+ * environment, and <code>Properties.load</code> over every file. Inputs are
+ * generated from a fixed seed, which can be changed with the system property
+ * <code>gumshoe.seed</code>; every failure message names the seed.
+ */
+public class GumshoeEquivalenceTest {
+
+        /**
+         * The seed all inputs are generated from.
+         */
+        private static final long SEED = Long.getLong("gumshoe.seed",
+                        20261019L);
+
+        /**
+         * How many random cases each test tries.
+         */
+        private static final int CASES = 500;
+
+        /**
+         * How many threads hammer shared instances.
+         */
+        private static final int THREADS = 8;
+
+        /**
+         * What Gumshoe says when an option is missing its value.
+         */
+        private static final String NOT_ENOUGH = "Not enough arguments.";
+
+        /**
+         * The argument that reads more arguments from standard input.
+         */
+        private static final String FROM_STDIN = "--options-from-stdin";
+
+        /**
+         * The program name every test gathers for.
+         */
+        private static final String PROGRAM = "myprogram";
+
+        /**
+         * Characters random words are made of, picked to cover separators,
+         * quotes, escapes, line terminators and characters outside of ASCII
+         * and outside of the BMP.
+         */
+        private static final String[] PIECES = new String[] {"a", "b", "c",
+                        "X", "Y", "0", "9", "-", "--", "_", ".", "=", ":",
+                        "#", "!", " ", "\t", "\n", "\r", "\\", "'", "\"",
+                        "@", "é", "中", "😀", " ", "\u0085", "ß", "İ"};
+
+        /**
+         * How arguments may start, so that most of them are options.
+         */
+        private static final String[] ARGUMENT_STARTS = new String[] {
+                        "--set-", "--add-", "--enable-", "--disable-",
+                        "--reset-", "--bogus-", "--", "-", "---set-",
+                        "--set", "--SET-", "-a", "-e", "-x", ""};
+
+        /**
+         * Command line aliases used by every gather.
+         */
+        private static final Map<String, String> ALIASES = Map.of("-a",
+                        "--set-alias-a", "-e", "--enable-alias-e", "-x",
+                        "plain");
+
+        /**
+         * Property names used in generated files, few enough that files
+         * often override each other.
+         */
+        private static final String[] FILE_KEYS = new String[] {"a", "b",
+                        "a.b", "c.d.e", "é", "key\\ with\\ space",
+                        "k\\=v", "k\\:v", "\\u00e9t\\u00e9", "alias.a"};
+
+        /**
+         * The configuration files Gumshoe looks for, with the system
+         * properties below and no <code>HOME</code> variable.
+         */
+        private static final String[] BASE_FILES = new String[] {
+                        "/home/.myprogram/config.properties",
+                        "/a/b/c/.myprogram/config.properties"};
+
+        /**
+         * The fragment directories next to <code>BASE_FILES</code>.
+         */
+        private static final String[] FRAGMENT_DIRECTORIES = new String[] {
+                        "/home/.myprogram/config.d",
+                        "/a/b/c/.myprogram/config.d"};
+
+        /**
+         * Make a random word out of <code>PIECES</code>.
+         *
+         * @param random
+         *                   the source of randomness.
+         * @return the word, which may be empty.
+         */
+        private static String randomWord(final Random random) {
+                StringBuilder word = new StringBuilder();
+                int length = random.nextInt(6);
+                for (int i = 0; i < length; i++) {
+                        word.append(PIECES[random.nextInt(PIECES.length)]);
+                }
+                return word.toString();
+        }
+
+        /**
+         * Make a random command line.
+         *
+         * @param random
+         *                   the source of randomness.
+         * @return the arguments.
+         */
+        private static String[] randomArguments(final Random random) {
+                String[] arguments = new String[random.nextInt(12)];
+                for (int i = 0; i < arguments.length; i++) {
+                        if (random.nextInt(4) == 0) {
+                                arguments[i] = randomWord(random);
+                        } else {
+                                arguments[i] = ARGUMENT_STARTS[random.nextInt(
+                                                ARGUMENT_STARTS.length)]
+                                                + randomWord(random);
+                        }
+                }
+                return arguments;
+        }
+
+        /**
+         * Make a random environment, with variables for this program, for
+         * programs with similar names, and for nobody in particular.
+         *
+         * @param random
+         *                   the source of randomness.
+         * @return the environment.
+         */
+        private static Map<String, String> randomEnvironment(
+                        final Random random) {
+                String[] prefixes = new String[] {"MYPROGRAM_",
+                                "MYPROGRAM_A_", "MYPROGRAMX_", "MY_",
+                                "myprogram_", "OTHER_", "", "MY_PROG_"};
+                Map<String, String> environment =
+                                new HashMap<String, String>();
+                int count = random.nextInt(10);
+                for (int i = 0; i < count; i++) {
+                        environment.put(prefixes[random.nextInt(
+                                        prefixes.length)]
+                                        + randomWord(random).toUpperCase(),
+                                        randomWord(random));
+                }
+                environment.remove("HOME");
+                environment.remove("XDG_CONFIG_HOME");
+                environment.remove("AppData");
+                environment.remove("MYPROGRAM_CONFIG_FILES");
+                return environment;
+        }
+
+        /**
+         * Make random properties file text, with comments, every kind of
+         * separator, escapes, unicode and continuation lines.
+         *
+         * @param random
+         *                   the source of randomness.
+         * @return the text.
+         */
+        private static String randomPropertiesFile(final Random random) {
+                String[] separators = new String[] {"=", ":", " ", "\t",
+                                " = ", "\t: "};
+                String[] valuePieces = new String[] {"value", " ", "\\n",
+                                "\\t", "\\\\", "\\u00e9", "é", "中", "😀",
+                                "=", ":", "#", "\\\n    ", "\\\r\n\t",
+                                "\\ ", "x"};
+                String[] newlines = new String[] {"\n", "\r\n", "\r"};
+                StringBuilder text = new StringBuilder();
+                int lines = random.nextInt(8);
+                for (int i = 0; i < lines; i++) {
+                        int kind = random.nextInt(6);
+                        if (kind == 0) {
+                                String comment = randomWord(random)
+                                                .replaceAll("[\r\n]", "");
+                                text.append(random.nextBoolean() ? "# " : "! ")
+                                                .append(comment);
+                        } else if (kind > 1) {
+                                if (random.nextBoolean()) {
+                                        text.append("  ");
+                                }
+                                text.append(FILE_KEYS[random.nextInt(
+                                                FILE_KEYS.length)]);
+                                text.append(separators[random.nextInt(
+                                                separators.length)]);
+                                int pieces = random.nextInt(5);
+                                for (int j = 0; j < pieces; j++) {
+                                        text.append(valuePieces[random.nextInt(
+                                                        valuePieces.length)]);
+                                }
+                        }
+                        text.append(newlines[random.nextInt(newlines.length)]);
+                }
+                return text.toString();
+        }
+
+        /**
+         * Make a random set of configuration files and fragments, some of
+         * them in directories Gumshoe does not read.
+         *
+         * @param random
+         *                   the source of randomness.
+         * @return the contents of each file, by path.
+         */
+        private static Map<String, String> randomFiles(final Random random) {
+                Map<String, String> files = new HashMap<String, String>();
+                for (String path : BASE_FILES) {
+                        if (random.nextInt(4) > 0) {
+                                files.put(path, randomPropertiesFile(random));
+                        }
+                }
+                for (String directory : FRAGMENT_DIRECTORIES) {
+                        int count = random.nextInt(10);
+                        for (int i = 0; i < count; i++) {
+                                String extension = ".properties";
+                                if (random.nextInt(5) == 0) {
+                                        extension = ".txt";
+                                }
+                                String name = random.nextInt(100) + extension;
+                                files.put(directory + "/" + name,
+                                                randomPropertiesFile(random));
+                        }
+                }
+                files.put("/elsewhere/config.properties", "a=elsewhere");
+                return files;
+        }
+
+        /**
+         * Gather options the way Gumshoe 1.0 did: load every configuration
+         * file and fragment in order, scan the environment with a regular
+         * expression, then parse the command line with a regular expression.
+         *
+         * @param files
+         *                        the contents of each file, by path.
+         * @param environment
+         *                        the environment.
+         * @param arguments
+         *                        the command line.
+         * @return the outcome, as made by <code>describe</code>.
+         * @throws IOException
+         *                         never, as files are in memory.
+         */
+        private static String reference(final Map<String, String> files,
+                        final Map<String, String> environment,
+                        final String[] arguments) throws IOException {
+                Properties results = new Properties();
+                for (int i = 0; i < BASE_FILES.length; i++) {
+                        String contents = files.get(BASE_FILES[i]);
+                        if (contents != null) {
+                                load(results, contents);
+                        }
+                        String directory = FRAGMENT_DIRECTORIES[i];
+                        List<String> fragments = new ArrayList<String>();
+                        for (String path : files.keySet()) {
+                                String parent = path.substring(0,
+                                                path.lastIndexOf('/'));
+                                if (parent.equals(directory) && path
+                                                .endsWith(".properties")) {
+                                        fragments.add(path);
+                                }
+                        }
+                        Collections.sort(fragments);
+                        for (String fragment : fragments) {
+                                load(results, files.get(fragment));
+                        }
+                }
+                referenceEnvironment(results, PROGRAM, environment);
+                List<String> unused = new ArrayList<String>();
+                try {
+                        referenceArguments(results, arguments, unused);
+                } catch (IllegalArgumentException iae) {
+                        return "error: " + iae.getMessage();
+                }
+                return describe(results, unused);
+        }
+
+        /**
+         * Load properties file text into <code>results</code>.
+         *
+         * @param results
+         *                     the properties being built.
+         * @param contents
+         *                     the text.
+         * @throws IOException
+         *                         never, as the text is in memory.
+         */
+        private static void load(final Properties results,
+                        final String contents) throws IOException {
+                Properties loaded = new Properties();
+                loaded.load(new InputStreamReader(new ByteArrayInputStream(
+                                contents.getBytes(StandardCharsets.UTF_8)),
+                                StandardCharsets.UTF_8));
+                results.putAll(loaded);
+        }
+
+        /**
+         * Scan the environment the way Gumshoe 1.0 did.
+         *
+         * @param results
+         *                        the properties being built.
+         * @param programName
+         *                        the program name.
+         * @param environment
+         *                        the environment.
+         */
+        private static void referenceEnvironment(final Properties results,
+                        final String programName,
+                        final Map<String, String> environment) {
+                Pattern findProgramName = Pattern.compile(
+                                "^" + programName.toUpperCase() + "_(.*)$");
+                environment.forEach((String key, String value) -> {
+                        Matcher inspect = findProgramName.matcher(key);
+                        if (inspect.matches()) {
+                                results.setProperty(inspect.group(1)
+                                                .toLowerCase().replace('_',
+                                                                '.'),
+                                                value);
+                        }
+                });
+        }
+
+        /**
+         * Parse the command line the way Gumshoe 1.0 did.
+         *
+         * @param results
+         *                      the properties being built.
+         * @param arguments
+         *                      the command line.
+         * @param unused
+         *                      where to put the arguments that were not
+         *                      used.
+         * @throws IllegalArgumentException
+         *                      if an option is missing its value.
+         */
+        private static void referenceArguments(final Properties results,
+                        final String[] arguments, final List<String> unused) {
+                Pattern findParts = Pattern.compile("^--([^-]+)-(.+)$");
+                for (int index = 0; index < arguments.length; index++) {
+                        String argument = ALIASES.getOrDefault(
+                                        arguments[index], arguments[index]);
+                        Matcher inspect = findParts.matcher(argument);
+                        if (!inspect.matches()) {
+                                unused.add(argument);
+                                continue;
+                        }
+                        String verb = inspect.group(1);
+                        String property = inspect.group(2).toLowerCase()
+                                        .replace('-', '.');
+                        if (verb.equals("enable")) {
+                                results.setProperty(property, "true");
+                        } else if (verb.equals("disable")) {
+                                results.setProperty(property, "false");
+                        } else if (verb.equals("reset")) {
+                                results.remove(property);
+                        } else {
+                                index++;
+                                if (index >= arguments.length) {
+                                        throw new IllegalArgumentException(
+                                                        NOT_ENOUGH);
+                                }
+                                String value = arguments[index];
+                                String prior = results.getProperty(property);
+                                if (verb.equals("set") || (verb.equals("add")
+                                                && prior == null)) {
+                                        results.setProperty(property, value);
+                                } else if (verb.equals("add")) {
+                                        results.setProperty(property,
+                                                        prior + "," + value);
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Describe an outcome so that outcomes can be compared, and so that
+         * a failed comparison shows what differs.
+         *
+         * @param options
+         *                    the gathered options.
+         * @param unused
+         *                    the unused arguments.
+         * @return the description.
+         */
+        private static String describe(final Properties options,
+                        final List<String> unused) {
+                return new TreeMap<Object, Object>(options) + " unused "
+                                + unused;
+        }
+
+        /**
+         * Run a gather and describe its outcome.
+         *
+         * @param gather
+         *                   the gather.
+         * @return the outcome, as made by <code>describe</code>, or the
+         *         error message.
+         * @throws Exception
+         *                       if the gather fails other than by the command
+         *                       line being short.
+         */
+        private static String outcome(final Callable<GumshoeReturn> gather)
+                        throws Exception {
+                try {
+                        GumshoeReturn result = gather.call();
+                        return describe(result.getOptionsMap(),
+                                        result.getUnusedArguments());
+                } catch (Gumshoe.GumshoeException ge) {
+                        return "error: " + ge.getMessage();
+                }
+        }
+
+        /**
+         * Gather options with a prepared instance and describe the outcome.
+         *
+         * @param prepared
+         *                      the prepared instance.
+         * @param arguments
+         *                      the command line.
+         * @return the outcome, as made by <code>outcome</code>.
+         * @throws Exception
+         *                       if the gather fails other than by the command
+         *                       line being short.
+         */
+        private static String gathered(final PreparedGumshoe prepared,
+                        final String[] arguments) throws Exception {
+                return outcome(() -> prepared.gatherOptions(arguments));
+        }
+
+        /**
+         * Swap the command line of a set of layers and describe the outcome.
+         *
+         * @param layers
+         *                      the layers.
+         * @param arguments
+         *                      the command line.
+         * @return the outcome, as made by <code>outcome</code>.
+         * @throws Exception
+         *                       if the gather fails other than by the command
+         *                       line being short.
+         */
+        private static String layered(final GumshoeLayers layers,
+                        final String[] arguments) throws Exception {
+                return outcome(() -> layers.withArguments(arguments)
+                                .getResult());
+        }
+
+        /**
+         * Make the system properties every test uses.
+         *
+         * @return the system properties.
+         */
+        private static Properties systemProperties() {
+                Properties systemProperties = new Properties();
+                systemProperties.putAll(Map.of("file.separator", "/",
+                                "user.home", "/home", "user.dir", "/a/b/c"));
+                return systemProperties;
+        }
+
+        /**
+         * Make a finder over the given files that knows when each was last
+         * modified, so that Gumshoe's caches are used.
+         *
+         * @param files
+         *                  the contents of each file, by path.
+         * @return the finder.
+         */
+        private static MockConfigFinder timedFinder(
+                        final Map<String, String> files) {
+                MockConfigFinder finder = MockConfigFinder
+                                .createInstance(files);
+                for (String path : files.keySet()) {
+                        finder.setLastModified(path, 1);
+                }
+                for (String directory : FRAGMENT_DIRECTORIES) {
+                        finder.setLastModified(directory, 1);
+                }
+                return finder;
+        }
+
+        /**
+         * Prepare an instance over the given finder and environment.
+         *
+         * @param finder
+         *                        the finder.
+         * @param environment
+         *                        the environment.
+         * @return the prepared instance.
+         */
+        private static PreparedGumshoe prepare(final ConfigFinder finder,
+                        final Map<String, String> environment) {
+                return Gumshoe.builder().programName(PROGRAM).aliases(ALIASES)
+                                .configFinder(finder)
+                                .systemProperties(systemProperties())
+                                .environment(environment).build();
+        }
+
+        /**
+         * Test that random command lines are parsed just as the regular
+         * expression parser parsed them.
+         */
+        @Test
+        public void testArgumentsMatchReference() throws Exception {
+                Random random = new Random(SEED);
+                PreparedGumshoe prepared = prepare(
+                                MockConfigFinder.createInstance(Map.of()),
+                                Map.of());
+                GumshoeLayers layers = prepared.gatherLayers(new String[] {});
+                for (int i = 0; i < CASES; i++) {
+                        String[] arguments = randomArguments(random);
+                        String expected = reference(Map.of(), Map.of(),
+                                        arguments);
+                        String message = "seed " + SEED + ", arguments "
+                                        + Arrays.toString(arguments);
+                        Assert.assertEquals(message, expected,
+                                        gathered(prepared, arguments));
+                        Assert.assertEquals(message, expected,
+                                        layered(layers, arguments));
+                }
+        }
+
+        /**
+         * Test that a random command line gives the same outcome when it is
+         * read from an argument file, quoted, as when it is given directly.
+         */
+        @Test
+        public void testArgumentFilesMatchArguments() throws Exception {
+                Random random = new Random(SEED);
+                String[] spaces = new String[] {" ", "\n", "\t", "  \r\n",
+                                "\n# a comment\n"};
+                for (int i = 0; i < CASES; i++) {
+                        List<String> kept = new ArrayList<String>();
+                        StringBuilder file = new StringBuilder();
+                        for (String argument : randomArguments(random)) {
+                                if (argument.startsWith("@") || argument
+                                                .equals(FROM_STDIN)) {
+                                        continue;
+                                }
+                                kept.add(argument);
+                                String quoted = argument.replace("'",
+                                                "'\\''");
+                                String space = spaces[random.nextInt(
+                                                spaces.length)];
+                                file.append('\'').append(quoted).append('\'')
+                                                .append(space);
+                        }
+                        String[] arguments = kept.toArray(new String[0]);
+                        MockConfigFinder finder = MockConfigFinder
+                                        .createInstance(Map.of("/args",
+                                                        file.toString()));
+                        PreparedGumshoe prepared = Gumshoe.builder()
+                                        .programName(PROGRAM).aliases(ALIASES)
+                                        .configFinder(finder)
+                                        .systemProperties(systemProperties())
+                                        .environment(Map.of())
+                                        .argumentFiles(true).build();
+                        Assert.assertEquals("seed " + SEED + ", file "
+                                        + file, gathered(prepared, arguments),
+                                        gathered(prepared, new String[] {
+                                                        "@/args"}));
+                }
+        }
+
+        /**
+         * Test that the partitioned environment finds just the variables the
+         * regular expression scan found, for program names with and without
+         * underscores.
+         */
+        @Test
+        public void testEnvironmentMatchesReference() throws Exception {
+                Random random = new Random(SEED);
+                for (int i = 0; i < CASES; i++) {
+                        Map<String, String> environment =
+                                        randomEnvironment(random);
+                        for (String programName : List.of(PROGRAM,
+                                        "my_prog")) {
+                                Properties expected = new Properties();
+                                referenceEnvironment(expected, programName,
+                                                environment);
+                                MockConfigFinder finder = MockConfigFinder
+                                                .createInstance(Map.of());
+                                Properties system = systemProperties();
+                                Properties found = Gumshoe.builder()
+                                                .programName(programName)
+                                                .configFinder(finder)
+                                                .systemProperties(system)
+                                                .environment(environment)
+                                                .build()
+                                                .gatherOptions(new String[] {})
+                                                .getOptionsMap();
+                                Assert.assertEquals("seed " + SEED
+                                                + ", environment "
+                                                + environment, expected,
+                                                found);
+                        }
+                }
+        }
+
+        /**
+         * Test that whole gathers over random files, environments and command
+         * lines match the reference, through every way of gathering, and that
+         * compact storage and export and import keep the options as they
+         * are. A file is then changed, to check that caches notice.
+         */
+        @Test
+        public void testGathersMatchReference() throws Exception {
+                Random random = new Random(SEED);
+                for (int i = 0; i < CASES; i++) {
+                        Map<String, String> files = randomFiles(random);
+                        Map<String, String> environment =
+                                        randomEnvironment(random);
+                        String[] arguments = randomArguments(random);
+                        MockConfigFinder finder = timedFinder(files);
+                        PreparedGumshoe prepared = prepare(finder,
+                                        environment);
+                        Gumshoe unprepared = new Gumshoe(finder,
+                                        systemProperties(), environment);
+                        String message = "seed " + SEED + ", case " + i;
+                        String expected = reference(files, environment,
+                                        arguments);
+                        Assert.assertEquals(message, expected,
+                                        gathered(prepared, arguments));
+                        Assert.assertEquals(message, expected,
+                                        outcome(() -> unprepared.gatherOptions(
+                                                        PROGRAM, ALIASES,
+                                                        arguments)));
+                        Assert.assertEquals(message, expected,
+                                        outcome(() -> prepared
+                                                        .gatherLayers(arguments)
+                                                        .getResult()));
+                        if (expected.startsWith("error: ")) {
+                                continue;
+                        }
+                        GumshoeReturn gathered = prepared
+                                        .gatherOptions(arguments);
+                        assertSameOptions(message, gathered);
+                        GumshoeLayers layers = prepared
+                                        .gatherLayers(arguments);
+                        List<String> paths = new ArrayList<String>(
+                                        files.keySet());
+                        Collections.sort(paths);
+                        String changed = paths.get(
+                                        random.nextInt(paths.size()));
+                        files.put(changed, randomPropertiesFile(random));
+                        finder.setLastModified(changed, 2);
+                        expected = reference(files, environment, arguments);
+                        message = message + ", changed " + changed;
+                        Assert.assertEquals(message, expected,
+                                        gathered(prepared, arguments));
+                        Assert.assertEquals(message, expected,
+                                        outcome(() -> layers.withFileChanged(
+                                                        changed).getResult()));
+                }
+        }
+
+        /**
+         * Check that compact storage, binary export and JSON export all give
+         * back the gathered options unchanged.
+         *
+         * @param message
+         *                     what to say on failure.
+         * @param gathered
+         *                     the gathered options.
+         * @throws Exception
+         *                       if the options could not be exported or
+         *                       imported.
+         */
+        private static void assertSameOptions(final String message,
+                        final GumshoeReturn gathered) throws Exception {
+                Properties options = gathered.getOptionsMap();
+                for (boolean offHeap : new boolean[] {false, true}) {
+                        CompactProperties compact = gathered.compact(offHeap)
+                                        .getCompactOptions();
+                        Assert.assertEquals(message, options.size(),
+                                        compact.size());
+                        for (String key : options.stringPropertyNames()) {
+                                Assert.assertEquals(message,
+                                                options.getProperty(key),
+                                                compact.getProperty(key));
+                        }
+                        Assert.assertEquals(message, options,
+                                        compact.toProperties());
+                }
+                ByteArrayOutputStream binary = new ByteArrayOutputStream();
+                gathered.exportBinary(binary);
+                Assert.assertEquals(message, options, OptionsCodec.read(
+                                new ByteArrayInputStream(
+                                                binary.toByteArray()), null));
+                ByteArrayOutputStream json = new ByteArrayOutputStream();
+                gathered.exportJson(json);
+                Assert.assertEquals(message, options, OptionsCodec.read(
+                                new ByteArrayInputStream(json.toByteArray()),
+                                null));
+        }
+
+        /**
+         * Test that one prepared instance, and one set of layers, shared by
+         * many threads gather exactly what they gather on one thread, and
+         * that access tracking counts every lookup.
+         */
+        @Test
+        public void testSharedInstancesUnderContention() throws Exception {
+                Random random = new Random(SEED);
+                Map<String, String> files = randomFiles(random);
+                Map<String, String> environment = randomEnvironment(random);
+                MockConfigFinder finder = timedFinder(files);
+                PreparedGumshoe prepared = prepare(finder, environment);
+                GumshoeLayers layers = prepared.gatherLayers(new String[] {});
+                Map<String[], String> cases =
+                                new LinkedHashMap<String[], String>();
+                for (int i = 0; i < CASES; i++) {
+                        String[] arguments = randomArguments(random);
+                        cases.put(arguments, reference(files, environment,
+                                        arguments));
+                }
+                GumshoeReturn tracked = prepared.gatherOptions(new String[] {})
+                                .withAccessTracking();
+                Properties trackedOptions = tracked.getOptionsMap();
+                ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+                List<Future<?>> workers = new ArrayList<Future<?>>();
+                for (int t = 0; t < THREADS; t++) {
+                        final long workerSeed = SEED + t;
+                        workers.add(pool.submit(() -> {
+                                List<String[]> order = new ArrayList<String[]>(
+                                                cases.keySet());
+                                Collections.shuffle(order,
+                                                new Random(workerSeed));
+                                for (String[] args : order) {
+                                        String expected = cases.get(args);
+                                        String message = "seed " + SEED
+                                                        + ", arguments "
+                                                        + Arrays.toString(args);
+                                        Assert.assertEquals(message, expected,
+                                                        gathered(prepared,
+                                                                        args));
+                                        Assert.assertEquals(message, expected,
+                                                        layered(layers, args));
+                                        trackedOptions.getProperty("a");
+                                }
+                                return null;
+                        }));
+                }
+                for (Future<?> worker : workers) {
+                        worker.get();
+                }
+                pool.shutdown();
+                Assert.assertEquals((long) THREADS * CASES, tracked
+                                .getAccessStatistics().getCount("a"));
+        }
+
+        /**
+         * Make sure the random inputs actually reach the interesting cases,
+         * so that the tests above cannot pass by generating nothing useful.
+         */
+        @Test
+        public void testGeneratorsCoverInterestingCases() throws Exception {
+                Random random = new Random(SEED);
+                int errors = 0;
+                int options = 0;
+                int unused = 0;
+                for (int i = 0; i < CASES; i++) {
+                        String outcome = reference(randomFiles(random),
+                                        randomEnvironment(random),
+                                        randomArguments(random));
+                        if (outcome.startsWith("error: ")) {
+                                errors++;
+                        } else {
+                                if (!outcome.startsWith("{}")) {
+                                        options++;
+                                }
+                                if (!outcome.endsWith("unused []")) {
+                                        unused++;
+                                }
+                        }
+                }
+                String message = "seed " + SEED;
+                Assert.assertTrue(message, errors > 0);
+                Assert.assertTrue(message, options > CASES / 2);
+                Assert.assertTrue(message, unused > 0);
+        }
+}
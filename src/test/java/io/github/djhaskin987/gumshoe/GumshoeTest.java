@@ -1,11 +1,24 @@
 package io.github.djhaskin987.gumshoe;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Properties;
 import java.util.HashMap;
+import java.util.ArrayList;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -293,4 +306,1073 @@ public class GumshoeTest {
                                 "/a/b/c/.myprogram/config.properties" },
                                 finder.getExistenceChecks().toArray());
         }
+
+        /**
+         * Test that compact storage gives back the same options as the
+         * ordinary options map, both on and off the heap.
+         */
+        @Test
+        public void testCompact() {
+                Map<String, String> mockConfigFiles = Map.of(
+                                "/a/b/c/.myprogram/config.properties",
+                                "utf.8=✓\na.b.c=false\na.b.d=animated");
+                MockConfigFinder finder = MockConfigFinder
+                                .createInstance(mockConfigFiles);
+                Properties systemProperties = new Properties();
+                systemProperties.putAll(Map.of("file.separator", "/",
+                                "user.home", "/home", "user.dir", "/a/b/c"));
+                Map<String, String> environment = Map.of("MYPROGRAM_A",
+                                "a good grade");
+                Gumshoe testedInstance = new Gumshoe(finder, systemProperties,
+                                environment);
+                GumshoeReturn result = null;
+                try {
+                        result = testedInstance.gatherOptions("myprogram",
+                                        new HashMap<String, String>(),
+                                        new String[] {"--set-empty", "",
+                                                        "leftover" });
+                } catch (IOException ioe) {
+                        Assert.fail("Couldn't open config files.");
+                } catch (Gumshoe.GumshoeException gse) {
+                        Assert.fail("Command line could not be parsed.");
+                } catch (Exception all) {
+                        Assert.fail("Some other error happened.");
+                }
+                Properties expected = result.getOptionsMap();
+                for (boolean offHeap : new boolean[] {false, true }) {
+                        GumshoeReturn compacted = result.compact(offHeap);
+                        CompactProperties compact = compacted
+                                        .getCompactOptions();
+                        Assert.assertEquals(expected.size(), compact.size());
+                        Assert.assertEquals(expected.stringPropertyNames(),
+                                        compact.stringPropertyNames());
+                        for (String key : expected.stringPropertyNames()) {
+                                Assert.assertEquals(expected.getProperty(key),
+                                                compact.getProperty(key));
+                        }
+                        Assert.assertNull(compact.getProperty("a.b"));
+                        Assert.assertEquals("none",
+                                        compact.getProperty("a.b", "none"));
+                        Assert.assertEquals("", compact.getProperty("empty"));
+                        Assert.assertEquals(expected,
+                                        compacted.getOptionsMap());
+                        Assert.assertEquals(result.getUnusedArguments(),
+                                        compacted.getUnusedArguments());
+                        Properties view = compacted.getOptionsMap();
+                        Assert.assertEquals(view, expected);
+                        Assert.assertEquals("✓", view.get("utf.8"));
+                        Assert.assertTrue(view.containsKey("a.b.c"));
+                        Assert.assertEquals(expected.toString().length(),
+                                        view.toString().length());
+                        try {
+                                view.setProperty("a.b.c", "true");
+                                Assert.fail("The view could be changed.");
+                        } catch (UnsupportedOperationException uoe) {
+                                Assert.assertEquals("false",
+                                                view.getProperty("a.b.c"));
+                        }
+                        Assert.assertSame(compact,
+                                        compacted.getCompactOptions());
+                        Assert.assertEquals(offHeap, compact.isOffHeap());
+                        Assert.assertEquals(!offHeap, compacted
+                                        .compact(!offHeap)
+                                        .getCompactOptions().isOffHeap());
+                        Assert.assertEquals(expected, compacted
+                                        .compact(!offHeap).getOptionsMap());
+                }
+                Assert.assertSame(result.getCompactOptions(),
+                                result.getCompactOptions());
+                CompactProperties empty = CompactProperties
+                                .fromProperties(new Properties(), false);
+                Assert.assertEquals(0, empty.size());
+                Assert.assertNull(empty.getProperty("a"));
+        }
+
+        /**
+         * Test that a prepared instance gathers the same options as the
+         * unprepared one, and can be shared between threads.
+         */
+        @Test
+        public void testPrepared() throws Exception {
+                Map<String, String> mockConfigFiles = Map.of(
+                                "/home/.myprogram/config.properties",
+                                "a.b.c=true",
+                                "/a/b/c/.myprogram/config.properties",
+                                "a.b.c=false\na.b.d=animated");
+                MockConfigFinder finder = MockConfigFinder
+                                .createInstance(mockConfigFiles);
+                Properties systemProperties = new Properties();
+                systemProperties.putAll(Map.of("file.separator", "/",
+                                "user.home", "/home", "user.dir", "/a/b/c"));
+                Map<String, String> environment = Map.of("MYPROGRAM_A",
+                                "a good grade");
+                Map<String, String> aliases = Map.of("-z", "--set-a-b-z");
+                String[] arguments = new String[] {"-z", "Lord Zed",
+                                "--add-a-b-d", "vegitated", "a" };
+                GumshoeReturn expected = new Gumshoe(finder, systemProperties,
+                                environment).gatherOptions("myprogram",
+                                                aliases, arguments);
+                PreparedGumshoe prepared = Gumshoe.builder()
+                                .programName("myprogram").aliases(aliases)
+                                .configFinder(finder)
+                                .systemProperties(systemProperties)
+                                .environment(environment).build();
+                Assert.assertEquals(List.of(
+                                "/home/.myprogram/config.properties",
+                                "/a/b/c/.myprogram/config.properties"),
+                                prepared.getConfigCandidates());
+                ExecutorService pool = Executors.newFixedThreadPool(8);
+                try {
+                        List<Future<GumshoeReturn>> futures;
+                        futures = new ArrayList<Future<GumshoeReturn>>();
+                        for (int i = 0; i < 64; i++) {
+                                futures.add(pool.submit(() -> prepared
+                                                .gatherOptions(arguments)));
+                        }
+                        for (Future<GumshoeReturn> future : futures) {
+                                GumshoeReturn actual = future.get();
+                                Assert.assertEquals(expected.getOptionsMap(),
+                                                actual.getOptionsMap());
+                                Assert.assertEquals(
+                                                expected.getUnusedArguments(),
+                                                actual.getUnusedArguments());
+                        }
+                } finally {
+                        pool.shutdown();
+                }
+        }
+
+        /**
+         * Test that a builder without a program name refuses to build.
+         */
+        @Test(expected = IllegalStateException.class)
+        public void testBuilderNeedsProgramName() {
+                Gumshoe.builder().build();
+        }
+
+        /**
+         * Test that secret files are read only when first looked up, only
+         * once, and never show up when the options are printed.
+         */
+        @Test
+        public void testSecretFiles() throws Exception {
+                Map<String, String> mockConfigFiles = Map.of(
+                                "/run/secrets/db_password", "hunter2\n",
+                                "/run/secrets/unused", "never read",
+                                "/run/secrets/shadowed", "never read");
+                MockConfigFinder finder = MockConfigFinder
+                                .createInstance(mockConfigFiles);
+                Map<String, String> environment = Map.of(
+                                "MYPROGRAM_DB_PASSWORD_FILE",
+                                "/run/secrets/db_password",
+                                "MYPROGRAM_API_KEY_FILE",
+                                "/run/secrets/unused",
+                                "MYPROGRAM_USER_FILE",
+                                "/run/secrets/shadowed",
+                                "MYPROGRAM_USER", "admin");
+                PreparedGumshoe prepared = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(new Properties())
+                                .environment(environment).secretFiles(true)
+                                .build();
+                for (int i = 0; i < 2; i++) {
+                        Properties props = prepared
+                                        .gatherOptions(new String[] {})
+                                        .getOptionsMap();
+                        Assert.assertFalse(props.toString()
+                                        .contains("hunter2"));
+                        Assert.assertEquals(SecretProperties.REDACTED,
+                                        props.get("db.password"));
+                        Assert.assertEquals("admin",
+                                        props.getProperty("user"));
+                        Assert.assertEquals("hunter2",
+                                        props.getProperty("db.password"));
+                        Assert.assertEquals("hunter2",
+                                        props.getProperty("db.password"));
+                }
+                Assert.assertEquals(List.of("/run/secrets/db_password"),
+                                finder.getReadPaths());
+
+                Properties overridden = prepared
+                                .gatherOptions(new String[] {
+                                                "--set-db-password",
+                                                "plain" })
+                                .getOptionsMap();
+                Assert.assertEquals("plain",
+                                overridden.getProperty("db.password"));
+                Assert.assertFalse(((SecretProperties) overridden)
+                                .isSecret("db.password"));
+                Properties added = prepared
+                                .gatherOptions(new String[] {
+                                                "--set-db-password", "a",
+                                                "--add-db-password", "b" })
+                                .getOptionsMap();
+                Assert.assertEquals("a,b", added.getProperty("db.password"));
+                for (boolean layered : new boolean[] {false, true }) {
+                        String[] addToSecret = new String[] {
+                                        "--add-db-password", "x" };
+                        try {
+                                if (layered) {
+                                        prepared.gatherLayers(addToSecret);
+                                } else {
+                                        prepared.gatherOptions(addToSecret);
+                                }
+                                Assert.fail("Added to a secret.");
+                        } catch (Gumshoe.GumshoeException gse) {
+                                Assert.assertEquals(
+                                                "Cannot add to secret "
+                                                                + "property: "
+                                                                + "db.password",
+                                                gse.getMessage());
+                        }
+                }
+
+                PreparedGumshoe plain = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(new Properties())
+                                .environment(environment).build();
+                Assert.assertEquals("/run/secrets/db_password",
+                                plain.gatherOptions(new String[] {})
+                                                .getOptionsMap()
+                                                .getProperty("db.password.file"));
+        }
+
+        /**
+         * Test that a schema only reads the secret files of properties whose
+         * values it checks, and that a secret file it cannot read makes the
+         * gather throw an IOException.
+         */
+        @Test
+        public void testSchemaSecrets() throws Exception {
+                MockConfigFinder finder = MockConfigFinder.createInstance(
+                                Map.of("/run/secrets/port", "8080\n"));
+                GumshoeSchema schema = GumshoeSchema.builder()
+                                .required("gone").range("port", 1, 65535)
+                                .build();
+                PreparedGumshoe prepared = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(new Properties())
+                                .environment(Map.of("MYPROGRAM_GONE_FILE",
+                                                "/s/missing",
+                                                "MYPROGRAM_PORT_FILE",
+                                                "/run/secrets/port"))
+                                .secretFiles(true).schema(schema).build();
+                Properties props = prepared.gatherOptions(new String[] {})
+                                .getOptionsMap();
+                Assert.assertEquals(List.of("/run/secrets/port"),
+                                finder.getReadPaths());
+                Assert.assertEquals("8080", props.getProperty("port"));
+                PreparedGumshoe unreadable = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(new Properties())
+                                .environment(Map.of("MYPROGRAM_GONE",
+                                                "here",
+                                                "MYPROGRAM_PORT_FILE",
+                                                "/s/missing"))
+                                .secretFiles(true).schema(schema).build();
+                try {
+                        unreadable.gatherOptions(new String[] {});
+                        Assert.fail("An unreadable secret was checked.");
+                } catch (IOException ioe) {
+                        Assert.assertEquals(
+                                        "Could not read the secret for port",
+                                        ioe.getMessage());
+                }
+        }
+
+        /**
+         * Test that copies of options with secrets have their own secrets,
+         * that serializing them keeps the secrets redacted, and that every
+         * way of changing a secret property forgets its secret file.
+         */
+        @Test
+        public void testSecretCopies() throws Exception {
+                MockConfigFinder finder = MockConfigFinder.createInstance(
+                                Map.of("/s/pw", "hunter2", "/s/other", "x"));
+                PreparedGumshoe prepared = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(new Properties())
+                                .environment(Map.of("MYPROGRAM_PW_FILE",
+                                                "/s/pw", "MYPROGRAM_OTHER_FILE",
+                                                "/s/other"))
+                                .secretFiles(true).build();
+                SecretProperties original = (SecretProperties) prepared
+                                .gatherOptions(new String[] {})
+                                .getOptionsMap();
+                SecretProperties copy = (SecretProperties) original.clone();
+                copy.setProperty("pw", "mine");
+                Assert.assertEquals("mine", copy.getProperty("pw"));
+                Assert.assertEquals("hunter2", original.getProperty("pw"));
+                Assert.assertTrue(original.isSecret("pw"));
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                        out.writeObject(original);
+                }
+                Object read;
+                try (ObjectInputStream in = new ObjectInputStream(
+                                new ByteArrayInputStream(
+                                                bytes.toByteArray()))) {
+                        read = in.readObject();
+                }
+                Assert.assertEquals(Properties.class, read.getClass());
+                Assert.assertEquals(SecretProperties.REDACTED,
+                                ((Properties) read).getProperty("other"));
+                Assert.assertEquals(List.of("/s/pw"), finder.getReadPaths());
+
+                original.merge("pw", "merged",
+                                (Object a, Object b) -> b);
+                original.replace("other", "replaced");
+                Assert.assertEquals("merged", original.getProperty("pw"));
+                Assert.assertEquals("replaced",
+                                original.getProperty("other"));
+                Assert.assertFalse(original.isSecret("pw"));
+                Assert.assertFalse(original.isSecret("other"));
+                Assert.assertEquals(List.of("/s/pw"), finder.getReadPaths());
+        }
+
+        /**
+         * Test that compacting options with secrets neither reads the secret
+         * files nor shows the secrets.
+         */
+        @Test
+        public void testCompactSecrets() throws Exception {
+                MockConfigFinder finder = MockConfigFinder.createInstance(
+                                Map.of("/s/pw", "hunter2", "/s/other",
+                                                "swordfish"));
+                PreparedGumshoe prepared = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(new Properties())
+                                .environment(Map.of("MYPROGRAM_PW_FILE",
+                                                "/s/pw", "MYPROGRAM_OTHER_FILE",
+                                                "/s/other"))
+                                .secretFiles(true).build();
+                GumshoeReturn compacted = prepared
+                                .gatherOptions(new String[] {})
+                                .compact(false).compact(true);
+                Properties props = compacted.getOptionsMap();
+                Assert.assertEquals(List.of(), finder.getReadPaths());
+                Assert.assertFalse(props.toString().contains("hunter2"));
+                Assert.assertEquals(SecretProperties.REDACTED,
+                                props.get("pw"));
+                Assert.assertEquals("hunter2", props.getProperty("pw"));
+                Assert.assertEquals("hunter2", compacted.getCompactOptions()
+                                .getProperty("pw"));
+                Assert.assertEquals(List.of("/s/pw"), finder.getReadPaths());
+                Properties copy = compacted.getCompactOptions()
+                                .toProperties();
+                Assert.assertFalse(copy.toString().contains("swordfish"));
+                Assert.assertEquals("swordfish", copy.getProperty("other"));
+        }
+
+        /**
+         * Test that only a program's own environment variables are picked up,
+         * including when the program name has an underscore in it.
+         */
+        @Test
+        public void testEnvironmentPartition() throws Exception {
+                Map<String, String> environment = Map.of("MY_PROG_A_B", "ab",
+                                "MY_PROG_c", "c", "MY_PROGRAM_D", "no",
+                                "MY_OTHER", "no", "MY", "no", "MYPROG_E",
+                                "no", "PATH", "/bin");
+                Gumshoe testedInstance = new Gumshoe(
+                                MockConfigFinder.createInstance(Map.of()),
+                                new Properties(), environment);
+                Properties props = testedInstance
+                                .gatherOptions("my_prog", Map.of(),
+                                                new String[] {})
+                                .getOptionsMap();
+                Properties expected = new Properties();
+                expected.putAll(Map.of("a.b", "ab", "c", "c"));
+                Assert.assertEquals(expected, props);
+
+                props = testedInstance.gatherOptions("my", Map.of(),
+                                new String[] {}).getOptionsMap();
+                Assert.assertEquals("ab", props.getProperty("prog.a.b"));
+                Assert.assertEquals("no", props.getProperty("other"));
+                Assert.assertEquals(4, props.size());
+        }
+
+        /**
+         * Test that argument files and standard input are read as if their
+         * arguments had been given on the command line.
+         */
+        @Test
+        public void testArgumentFiles() throws Exception {
+                Map<String, String> mockConfigFiles = Map.of(
+                                "/tmp/options",
+                                "# a comment\n--set-a-b 'single quoted'\n"
+                                                + "--add-c one --add-c \"two \\\" 2\"\n"
+                                                + "--enable-d -z zed @nested x\\ y\n"
+                                                + "--set-empty \"\"",
+                                "/tmp/short", "--set-a");
+                MockConfigFinder finder = MockConfigFinder
+                                .createInstance(mockConfigFiles);
+                PreparedGumshoe prepared = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .aliases(Map.of("-z", "--set-z"))
+                                .systemProperties(new Properties())
+                                .environment(Map.of()).argumentFiles(true)
+                                .standardInput(new ByteArrayInputStream(
+                                                "--reset-d\n--set-from stdin"
+                                                                .getBytes(StandardCharsets.UTF_8)))
+                                .build();
+                GumshoeReturn result = prepared.gatherOptions(new String[] {
+                                "first", "@/tmp/options", "stdin-next",
+                                "--options-from-stdin", "last" });
+                Properties props = result.getOptionsMap();
+                Assert.assertEquals("single quoted", props.getProperty("a.b"));
+                Assert.assertEquals("one,two \" 2", props.getProperty("c"));
+                Assert.assertNull(props.getProperty("d"));
+                Assert.assertEquals("zed", props.getProperty("z"));
+                Assert.assertEquals("", props.getProperty("empty"));
+                Assert.assertEquals("stdin", props.getProperty("from"));
+                Assert.assertEquals(List.of("first", "@nested", "x y",
+                                "stdin-next", "last"),
+                                result.getUnusedArguments());
+                try {
+                        prepared.gatherOptions(new String[] {"@/tmp/short",
+                                        "value" });
+                        Assert.fail("A value was taken from outside the "
+                                        + "argument file.");
+                } catch (Gumshoe.GumshoeException gse) {
+                        Assert.assertEquals("Not enough arguments.",
+                                        gse.getMessage());
+                }
+                Assert.assertEquals(List.of("@/tmp/options"), new Gumshoe(
+                                finder, new Properties(), Map.of())
+                                                .gatherOptions("myprogram",
+                                                                Map.of(),
+                                                                new String[] {"@/tmp/options" })
+                                                .getUnusedArguments());
+        }
+
+        /**
+         * Test that only one of many gathers running at once reads the
+         * standard input.
+         */
+        @Test
+        public void testStandardInputClaimedOnce() throws Exception {
+                byte[] standardInput = "--set-from stdin"
+                                .getBytes(StandardCharsets.UTF_8);
+                final PreparedGumshoe prepared = Gumshoe.builder()
+                                .programName("myprogram")
+                                .configFinder(MockConfigFinder
+                                                .createInstance(Map.of()))
+                                .systemProperties(new Properties())
+                                .environment(Map.of()).argumentFiles(true)
+                                .standardInput(new ByteArrayInputStream(
+                                                standardInput))
+                                .build();
+                ExecutorService pool = Executors.newFixedThreadPool(8);
+                List<Future<GumshoeReturn>> gathers;
+                gathers = new ArrayList<Future<GumshoeReturn>>();
+                for (int i = 0; i < 16; i++) {
+                        gathers.add(pool.submit(() -> prepared.gatherOptions(
+                                        new String[] {
+                                                "--options-from-stdin" })));
+                }
+                int sawStandardInput = 0;
+                for (Future<GumshoeReturn> gather : gathers) {
+                        Properties props = gather.get().getOptionsMap();
+                        if (props.getProperty("from") != null) {
+                                Assert.assertEquals("stdin",
+                                                props.getProperty("from"));
+                                sawStandardInput++;
+                        }
+                }
+                pool.shutdown();
+                Assert.assertEquals(1, sawStandardInput);
+        }
+
+        /**
+         * Test that fragments in config.d directories are merged in lexical
+         * order after their config.properties, and that unchanged files and
+         * directories are not read again.
+         */
+        @Test
+        public void testConfigFragments() throws Exception {
+                Map<String, String> mockConfigFiles;
+                mockConfigFiles = new HashMap<String, String>();
+                mockConfigFiles.put("/home/.myprogram/config.properties",
+                                "a=base\nb=base");
+                mockConfigFiles.put("/home/.myprogram/config.d/10-a.properties",
+                                "a=ten");
+                mockConfigFiles.put("/home/.myprogram/config.d/20-a.properties",
+                                "a=twenty");
+                mockConfigFiles.put("/home/.myprogram/config.d/ignored.txt",
+                                "a=ignored");
+                for (int i = 0; i < 10; i++) {
+                        mockConfigFiles.put("/a/b/c/.myprogram/config.d/" + i
+                                        + ".properties", "c=" + i);
+                }
+                MockConfigFinder finder = MockConfigFinder
+                                .createInstance(mockConfigFiles);
+                finder.setLastModified("/home/.myprogram/config.d", 1);
+                finder.setLastModified("/home/.myprogram/config.properties",
+                                1);
+                finder.setLastModified(
+                                "/home/.myprogram/config.d/10-a.properties",
+                                1);
+                finder.setLastModified(
+                                "/home/.myprogram/config.d/20-a.properties",
+                                1);
+                Properties systemProperties = new Properties();
+                systemProperties.putAll(Map.of("file.separator", "/",
+                                "user.home", "/home", "user.dir", "/a/b/c"));
+                PreparedGumshoe prepared = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(systemProperties)
+                                .environment(Map.of()).build();
+                Properties props = prepared.gatherOptions(new String[] {})
+                                .getOptionsMap();
+                Assert.assertEquals("twenty", props.getProperty("a"));
+                Assert.assertEquals("base", props.getProperty("b"));
+                Assert.assertEquals("9", props.getProperty("c"));
+                Assert.assertEquals(List.of("/home/.myprogram/config.d",
+                                "/a/b/c/.myprogram/config.d"),
+                                finder.getListedDirectories());
+
+                finder.getReadPaths().clear();
+                finder.getListedDirectories().clear();
+                props = prepared.gatherOptions(new String[] {})
+                                .getOptionsMap();
+                Assert.assertEquals("twenty", props.getProperty("a"));
+                Assert.assertEquals(List.of("/a/b/c/.myprogram/config.d"),
+                                finder.getListedDirectories());
+                Assert.assertFalse(finder.getReadPaths().stream().anyMatch(
+                                (String path) -> path.startsWith("/home")));
+
+                finder.getReadPaths().clear();
+                mockConfigFiles.put("/home/.myprogram/config.d/20-a.properties",
+                                "a=changed");
+                finder.setLastModified(
+                                "/home/.myprogram/config.d/20-a.properties",
+                                2);
+                props = prepared.gatherOptions(new String[] {})
+                                .getOptionsMap();
+                Assert.assertEquals("changed", props.getProperty("a"));
+                Assert.assertEquals(List.of(
+                                "/home/.myprogram/config.d/20-a.properties"),
+                                finder.getReadPaths().subList(0, 1));
+        }
+
+        /**
+         * Test that a Gumshoe made without the builder reads configuration
+         * files afresh on every call, even if they look unmodified.
+         */
+        @Test
+        public void testLegacyInstanceRereads() throws Exception {
+                Map<String, String> mockConfigFiles;
+                mockConfigFiles = new HashMap<String, String>();
+                mockConfigFiles.put("/home/.myprogram/config.properties",
+                                "a=first");
+                MockConfigFinder finder = MockConfigFinder
+                                .createInstance(mockConfigFiles);
+                finder.setLastModified("/home/.myprogram/config.properties",
+                                1);
+                Properties systemProperties = new Properties();
+                systemProperties.putAll(Map.of("file.separator", "/",
+                                "user.home", "/home", "user.dir", "/a/b/c"));
+                Gumshoe gumshoe = new Gumshoe(finder, systemProperties,
+                                Map.of());
+                Properties props = gumshoe.gatherOptions("myprogram",
+                                Map.of(), new String[] {}).getOptionsMap();
+                Assert.assertEquals("first", props.getProperty("a"));
+                mockConfigFiles.put("/home/.myprogram/config.properties",
+                                "a=second");
+                props = gumshoe.gatherOptions("myprogram", Map.of(),
+                                new String[] {}).getOptionsMap();
+                Assert.assertEquals("second", props.getProperty("a"));
+        }
+
+        /**
+         * Test that arguments are split into verb and property exactly as the
+         * pattern <code>^--([^-]+)-(.+)$</code> would split them.
+         */
+        @Test
+        public void testVerbSplitting() {
+                Pattern reference = Pattern.compile("^--([^-]+)-(.+)$");
+                String[] arguments = new String[] {"--set-a", "--set-a-b",
+                                "--set-", "---a", "--set--a", "--set",
+                                "--s\nt-a", "--set-a\nb", "--set-a\u2028",
+                                "-set-a", "--", "--enable-a-b-c", "set-a",
+                                "--ä-ö", "" };
+                for (String argument : arguments) {
+                        Matcher inspect = reference.matcher(argument);
+                        int verbEnd = Gumshoe.findVerbEnd(argument);
+                        Assert.assertEquals(argument, inspect.matches(),
+                                        verbEnd >= 0);
+                        if (verbEnd >= 0) {
+                                Assert.assertEquals(inspect.group(1),
+                                                argument.substring(2, verbEnd));
+                                Assert.assertEquals(inspect.group(2),
+                                                argument.substring(verbEnd + 1));
+                        }
+                }
+        }
+
+        /**
+         * Test that layers only work out again the layer that changed, and
+         * merge to the same options as a fresh gather.
+         */
+        @Test
+        public void testLayers() throws Exception {
+                Map<String, String> mockConfigFiles;
+                mockConfigFiles = new HashMap<String, String>();
+                mockConfigFiles.put("/home/.myprogram/config.properties",
+                                "a=base\nb=base");
+                mockConfigFiles.put("/home/.myprogram/config.d/10-a.properties",
+                                "a=ten");
+                MockConfigFinder finder = MockConfigFinder
+                                .createInstance(mockConfigFiles);
+                Properties systemProperties = new Properties();
+                systemProperties.putAll(Map.of("file.separator", "/",
+                                "user.home", "/home", "user.dir", "/a/b/c"));
+                PreparedGumshoe prepared = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(systemProperties)
+                                .environment(Map.of("MYPROGRAM_C", "env"))
+                                .build();
+                GumshoeLayers layers = prepared.gatherLayers(
+                                new String[] {"--add-b", "arg", "extra"});
+                Properties props = layers.getResult().getOptionsMap();
+                Assert.assertEquals("ten", props.getProperty("a"));
+                Assert.assertEquals("base,arg", props.getProperty("b"));
+                Assert.assertEquals("env", props.getProperty("c"));
+                Assert.assertEquals(List.of("extra"),
+                                layers.getResult().getUnusedArguments());
+                props.setProperty("b", "mine");
+                Assert.assertEquals("base,arg", layers.getResult()
+                                .getOptionsMap().getProperty("b"));
+
+                finder.getReadPaths().clear();
+                finder.getListedDirectories().clear();
+                GumshoeLayers changed = layers.withArguments(
+                                new String[] {"--set-c", "arg"});
+                props = changed.getResult().getOptionsMap();
+                Assert.assertEquals("base", props.getProperty("b"));
+                Assert.assertEquals("arg", props.getProperty("c"));
+                Assert.assertEquals(List.of(), finder.getReadPaths());
+                Assert.assertEquals(List.of(), finder.getListedDirectories());
+                Assert.assertEquals("base,arg", layers.getResult()
+                                .getOptionsMap().getProperty("b"));
+
+                mockConfigFiles.put("/home/.myprogram/config.properties",
+                                "b=changed");
+                mockConfigFiles.put("/home/.myprogram/config.d/20-a.properties",
+                                "a=twenty");
+                changed = changed.withFileChanged(
+                                "/home/.myprogram/config.properties");
+                Assert.assertEquals(List.of(
+                                "/home/.myprogram/config.properties"),
+                                finder.getReadPaths());
+                Assert.assertEquals("changed", changed.getResult()
+                                .getOptionsMap().getProperty("b"));
+                Assert.assertEquals("ten", changed.getResult().getOptionsMap()
+                                .getProperty("a"));
+
+                finder.getReadPaths().clear();
+                changed = changed.withFileChanged(
+                                "/home/.myprogram/config.d/20-a.properties");
+                Assert.assertEquals(List.of(
+                                "/home/.myprogram/config.d/20-a.properties"),
+                                finder.getReadPaths());
+                Assert.assertEquals(prepared.gatherOptions(
+                                new String[] {"--set-c", "arg"})
+                                .getOptionsMap(),
+                                changed.getResult().getOptionsMap());
+                Assert.assertSame(changed,
+                                changed.withFileChanged("/elsewhere"));
+        }
+
+        /**
+         * Test that every violation of a schema is reported at once, with
+         * where each bad property came from.
+         */
+        @Test
+        public void testSchema() throws Exception {
+                Map<String, String> mockConfigFiles;
+                mockConfigFiles = new HashMap<String, String>();
+                mockConfigFiles.put("/home/.myprogram/config.properties",
+                                "port=70000\nname=ok\npool.a.size=5");
+                mockConfigFiles.put("/home/.myprogram/config.d/10.properties",
+                                "pool.b.size=-1");
+                MockConfigFinder finder = MockConfigFinder
+                                .createInstance(mockConfigFiles);
+                Properties systemProperties = new Properties();
+                systemProperties.putAll(Map.of("file.separator", "/",
+                                "user.home", "/home"));
+                GumshoeSchema schema = GumshoeSchema.builder()
+                                .required("name").required("user")
+                                .range("port", 1, 65535)
+                                .range("pool.*", 0, 10)
+                                .matches("name", "[a-z]+")
+                                .oneOf("level", "debug", "info")
+                                .exclusive("quiet", "verbose").build();
+                PreparedGumshoe prepared = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(systemProperties)
+                                .environment(Map.of("MYPROGRAM_LEVEL",
+                                                "loud"))
+                                .schema(schema).build();
+                try {
+                        prepared.gatherOptions(new String[] {"--enable-quiet",
+                                        "--enable-verbose", "--set-name",
+                                        "Bad"});
+                        Assert.fail("Options should not meet the schema.");
+                } catch (Gumshoe.GumshoeException ge) {
+                        Assert.assertEquals(List.of(
+                                        "level (from environment variable "
+                                                        + "MYPROGRAM_LEVEL) "
+                                                        + "must be one of "
+                                                        + "debug, info",
+                                        "name (from the command line) must "
+                                                        + "match [a-z]+",
+                                        "pool.b.size (from file "
+                                                        + "/home/.myprogram/"
+                                                        + "config.d/"
+                                                        + "10.properties) "
+                                                        + "must be a whole "
+                                                        + "number from 0 to "
+                                                        + "10",
+                                        "port (from file /home/.myprogram/"
+                                                        + "config.properties)"
+                                                        + " must be a whole "
+                                                        + "number from 1 to "
+                                                        + "65535",
+                                        "quiet (from the command line) "
+                                                        + "cannot be enabled "
+                                                        + "together with "
+                                                        + "verbose",
+                                        "user is required but was not set"),
+                                        ge.getViolations());
+                }
+                Properties props = prepared.gatherOptions(new String[] {
+                                "--set-port", "80", "--set-user", "me",
+                                "--set-level", "info", "--reset-pool-b-size",
+                                "--enable-quiet"}).getOptionsMap();
+                Assert.assertEquals("80", props.getProperty("port"));
+        }
+
+        /**
+         * Test that exported options, in either format, import to the same
+         * options without any configuration files being looked for.
+         */
+        @Test
+        public void testExportImport() throws Exception {
+                Properties systemProperties = new Properties();
+                systemProperties.putAll(Map.of("file.separator", "/",
+                                "user.home", "/home"));
+                String contents = "plain=value\nunicode=\u00e9\u4e2d\n"
+                                + "quote=\"\\\\\ncontrol=a\\tb\\u0001\n"
+                                + "empty=";
+                MockConfigFinder finder = MockConfigFinder.createInstance(
+                                Map.of("/home/.myprogram/config.properties",
+                                                contents));
+                GumshoeReturn gathered = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(systemProperties)
+                                .environment(Map.of()).build()
+                                .gatherOptions(new String[] {});
+                Assert.assertEquals("\"\\", gathered.getOptionsMap()
+                                .getProperty("quote"));
+                ByteArrayOutputStream binary = new ByteArrayOutputStream();
+                gathered.exportBinary(binary);
+                ByteArrayOutputStream json = new ByteArrayOutputStream();
+                gathered.exportJson(json);
+                Assert.assertEquals("{\"control\":\"a\\tb\\u0001\","
+                                + "\"empty\":\"\",\"plain\":\"value\","
+                                + "\"quote\":\"\\\"\\\\\","
+                                + "\"unicode\":\"\u00e9\u4e2d\"}",
+                                json.toString(StandardCharsets.UTF_8));
+                for (byte[] exported : List.of(binary.toByteArray(),
+                                json.toByteArray())) {
+                        MockConfigFinder importer = new MockConfigFinder(
+                                        Map.of("/dev/fd/3", "")) {
+                                @Override
+                                public InputStream getInputStream(
+                                                final String path) {
+                                        return new ByteArrayInputStream(
+                                                        exported);
+                                }
+                        };
+                        PreparedGumshoe prepared = Gumshoe.builder()
+                                        .programName("myprogram")
+                                        .configFinder(importer)
+                                        .systemProperties(systemProperties)
+                                        .environment(Map.of("MYPROGRAM_PLAIN",
+                                                        "ignored"))
+                                        .importedOptions("/dev/fd/3").build();
+                        Properties props = prepared.gatherOptions(
+                                        new String[] {"--set-empty", "x"})
+                                        .getOptionsMap();
+                        Properties expected = new Properties();
+                        expected.putAll(gathered.getOptionsMap());
+                        expected.setProperty("empty", "x");
+                        Assert.assertEquals(expected, props);
+                        Assert.assertEquals(List.of(),
+                                        importer.getExistenceChecks());
+                }
+        }
+
+        /**
+         * Test that exporting options writes the paths of secret files
+         * without reading them, and that the importing process reads each
+         * secret lazily and keeps it redacted.
+         */
+        @Test
+        public void testExportSecrets() throws Exception {
+                MockConfigFinder finder = MockConfigFinder.createInstance(
+                                Map.of("/run/secrets/db_password",
+                                                "hunter2\n"));
+                GumshoeReturn gathered = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(new Properties())
+                                .environment(Map.of(
+                                                "MYPROGRAM_DB_PASSWORD_FILE",
+                                                "/run/secrets/db_password",
+                                                "MYPROGRAM_USER", "admin"))
+                                .secretFiles(true).build()
+                                .gatherOptions(new String[] {});
+                ByteArrayOutputStream binary = new ByteArrayOutputStream();
+                gathered.exportBinary(binary);
+                ByteArrayOutputStream json = new ByteArrayOutputStream();
+                gathered.compact(false).exportJson(json);
+                Assert.assertEquals(List.of(), finder.getReadPaths());
+                Assert.assertEquals("{\"db.password\":{\"file\":"
+                                + "\"/run/secrets/db_password\"},"
+                                + "\"user\":\"admin\"}",
+                                json.toString(StandardCharsets.UTF_8));
+                for (byte[] exported : List.of(binary.toByteArray(),
+                                json.toByteArray())) {
+                        Assert.assertFalse(new String(exported,
+                                        StandardCharsets.UTF_8)
+                                                        .contains("hunter2"));
+                        MockConfigFinder importer = new MockConfigFinder(
+                                        Map.of("/dev/fd/3", "", "/run/secrets/"
+                                                        + "db_password",
+                                                        "hunter2\n")) {
+                                @Override
+                                public InputStream getInputStream(
+                                                final String path)
+                                                throws IOException {
+                                        if (path.equals("/dev/fd/3")) {
+                                                return new ByteArrayInputStream(
+                                                                exported);
+                                        }
+                                        return super.getInputStream(path);
+                                }
+                        };
+                        Properties props = Gumshoe.builder()
+                                        .programName("myprogram")
+                                        .configFinder(importer)
+                                        .systemProperties(new Properties())
+                                        .environment(Map.of())
+                                        .importedOptions("/dev/fd/3").build()
+                                        .gatherOptions(new String[] {})
+                                        .getOptionsMap();
+                        Assert.assertEquals(SecretProperties.REDACTED,
+                                        props.get("db.password"));
+                        Assert.assertFalse(props.toString()
+                                        .contains("hunter2"));
+                        Assert.assertEquals(List.of(),
+                                        importer.getReadPaths());
+                        Assert.assertEquals("hunter2",
+                                        props.getProperty("db.password"));
+                        Assert.assertEquals("admin",
+                                        props.getProperty("user"));
+                        Assert.assertEquals(
+                                        List.of("/run/secrets/db_password"),
+                                        importer.getReadPaths());
+                }
+        }
+
+        /**
+         * Test that lookups are counted from many threads, that compacting
+         * and exporting are not, and that hot, unread and missing keys are
+         * reported.
+         */
+        @Test
+        public void testAccessTracking() throws Exception {
+                Properties systemProperties = new Properties();
+                systemProperties.putAll(Map.of("file.separator", "/",
+                                "user.home", "/home"));
+                MockConfigFinder finder = MockConfigFinder.createInstance(
+                                Map.of("/home/.myprogram/config.properties",
+                                                "hot=1\nwarm=2\ncold=3"));
+                GumshoeReturn gathered = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(systemProperties)
+                                .environment(Map.of()).build()
+                                .gatherOptions(new String[] {});
+                Assert.assertNull(gathered.getAccessStatistics());
+                GumshoeReturn tracked = gathered.withAccessTracking();
+                Properties props = tracked.getOptionsMap();
+                tracked.compact(false);
+                tracked.getCompactOptions();
+                tracked.exportBinary(new ByteArrayOutputStream());
+                tracked.exportJson(new ByteArrayOutputStream());
+                Assert.assertFalse(props.clone() instanceof TrackedProperties);
+                Assert.assertEquals(Set.of("hot", "warm", "cold"),
+                                tracked.getAccessStatistics()
+                                                .getUnreadKeys());
+                ExecutorService pool = Executors.newFixedThreadPool(4);
+                List<Future<?>> lookups = new ArrayList<Future<?>>();
+                for (int i = 0; i < 4; i++) {
+                        lookups.add(pool.submit(() -> {
+                                for (int j = 0; j < 1000; j++) {
+                                        Assert.assertEquals("1",
+                                                        props.getProperty(
+                                                                        "hot"));
+                                }
+                        }));
+                }
+                for (Future<?> lookup : lookups) {
+                        lookup.get();
+                }
+                pool.shutdown();
+                Assert.assertEquals("2", props.getProperty("warm"));
+                Assert.assertEquals("2", props.get("warm"));
+                Assert.assertTrue(props.containsKey("warm"));
+                Assert.assertEquals("x", props.getProperty("absent", "x"));
+                Assert.assertEquals("y", props.getOrDefault("absent", "y"));
+                AccessStatistics statistics = tracked.getAccessStatistics();
+                Assert.assertEquals(4000, statistics.getCount("hot"));
+                Assert.assertEquals(3, statistics.getCount("warm"));
+                Assert.assertEquals(2, statistics.getCount("absent"));
+                Assert.assertEquals(List.of("hot", "warm"),
+                                statistics.getHotKeys(2));
+                Assert.assertEquals(Set.of("cold"),
+                                statistics.getUnreadKeys());
+                Assert.assertEquals(Set.of("absent"),
+                                statistics.getMissingKeys());
+        }
+
+        /**
+         * Test that a tracked options map keeps no entries of its own, so
+         * that changing it through any method is seen by every lookup.
+         */
+        @Test
+        public void testTrackedChanges() throws Exception {
+                GumshoeReturn gathered = Gumshoe.builder()
+                                .programName("myprogram")
+                                .configFinder(MockConfigFinder
+                                                .createInstance(Map.of()))
+                                .systemProperties(new Properties())
+                                .environment(Map.of()).build()
+                                .gatherOptions(new String[] {"--set-a", "1" });
+                Properties options = gathered.getOptionsMap();
+                GumshoeReturn tracked = gathered.withAccessTracking();
+                Properties props = tracked.getOptionsMap();
+                props.putIfAbsent("x", "2");
+                Assert.assertEquals("2", props.getProperty("x"));
+                props.merge("a", "3", (Object prior, Object added) -> prior
+                                + "," + added);
+                Assert.assertEquals("1,3", props.getProperty("a"));
+                Assert.assertEquals("1,3", options.getProperty("a"));
+                props.entrySet().removeIf((Map.Entry<Object, Object> entry) ->
+                                entry.getKey().equals("a"));
+                Assert.assertNull(props.getProperty("a"));
+                Assert.assertEquals(options, props);
+                Assert.assertEquals(options.toString(), props.toString());
+                Assert.assertEquals(1, props.size());
+                Properties compactProps = tracked.compact(false)
+                                .withAccessTracking().getOptionsMap();
+                Assert.assertEquals("2", compactProps.getProperty("x"));
+                try {
+                        compactProps.putIfAbsent("y", "3");
+                        Assert.fail("Changed compact storage.");
+                } catch (UnsupportedOperationException uoe) {
+                        Assert.assertNull(compactProps.getProperty("y"));
+                }
+        }
+
+        /**
+         * Test that the profile set by any layer loads only that profile's
+         * files, on top of each location's file and fragments.
+         */
+        @Test
+        public void testProfiles() throws Exception {
+                Map<String, String> mockConfigFiles;
+                mockConfigFiles = new HashMap<String, String>();
+                mockConfigFiles.put("/home/.myprogram/config.properties",
+                                "profile=staging\na=home\nb=home");
+                mockConfigFiles.put("/home/.myprogram/config.d/1.properties",
+                                "b=fragment\nc=fragment");
+                mockConfigFiles.put(
+                                "/home/.myprogram/config-prod.properties",
+                                "a=prod\nc=prod\nprofile=ignored");
+                mockConfigFiles.put(
+                                "/home/.myprogram/config-staging.properties",
+                                "a=staging");
+                mockConfigFiles.put("/a/b/c/.myprogram/config.properties",
+                                "b=local");
+                MockConfigFinder finder = MockConfigFinder
+                                .createInstance(mockConfigFiles);
+                Properties systemProperties = new Properties();
+                systemProperties.putAll(Map.of("file.separator", "/",
+                                "user.home", "/home", "user.dir", "/a/b/c"));
+                PreparedGumshoe prepared = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(systemProperties)
+                                .environment(Map.of()).profileKey("profile")
+                                .build();
+                Properties props = prepared.gatherOptions(new String[] {})
+                                .getOptionsMap();
+                Assert.assertEquals("staging", props.getProperty("a"));
+
+                finder.getExistenceChecks().clear();
+                props = prepared.gatherOptions(new String[] {"--set-profile",
+                                "prod"}).getOptionsMap();
+                Assert.assertEquals("prod", props.getProperty("profile"));
+                Assert.assertEquals("prod", props.getProperty("a"));
+                Assert.assertEquals("local", props.getProperty("b"));
+                Assert.assertEquals("prod", props.getProperty("c"));
+                Assert.assertFalse(finder.getExistenceChecks().stream()
+                                .anyMatch((String path) -> path
+                                                .contains("staging")));
+                Assert.assertTrue(finder.getExistenceChecks().contains(
+                                "/a/b/c/.myprogram/config-prod.properties"));
+
+                GumshoeLayers layers = prepared.gatherLayers(new String[] {});
+                Assert.assertEquals("staging", layers.getProfile());
+                layers = layers.withArguments(new String[] {"--set-profile",
+                                "prod"});
+                Assert.assertEquals(props, layers.getResult().getOptionsMap());
+                mockConfigFiles.put(
+                                "/home/.myprogram/config-prod.properties",
+                                "a=changed");
+                layers = layers.withFileChanged(
+                                "/home/.myprogram/config-prod.properties");
+                Assert.assertEquals("changed", layers.getResult()
+                                .getOptionsMap().getProperty("a"));
+                Assert.assertEquals("fragment", layers.getResult()
+                                .getOptionsMap().getProperty("c"));
+
+                try {
+                        prepared.gatherOptions(new String[] {"--set-profile",
+                                        "../secrets"});
+                        Assert.fail("Profiles must not name other "
+                                        + "directories.");
+                } catch (Gumshoe.GumshoeException ge) {
+                        Assert.assertEquals("Invalid profile: ../secrets",
+                                        ge.getMessage());
+                }
+                for (String profile : new String[] {"a\u0000b", "a b",
+                                "a:b" }) {
+                        try {
+                                prepared.gatherOptions(new String[] {
+                                                "--set-profile", profile });
+                                Assert.fail("Profiles must be safe in file "
+                                                + "names.");
+                        } catch (Gumshoe.GumshoeException ge) {
+                                Assert.assertEquals("Invalid profile: "
+                                                + profile, ge.getMessage());
+                        }
+                }
+                Assert.assertEquals("home", prepared.gatherOptions(
+                                new String[] {"--set-profile", "prod-2_b.ä" })
+                                .getOptionsMap().getProperty("a"));
+        }
 }
@@ -7,9 +7,12 @@ import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 
 /**
- * Mock ConfigFinder class for use in testing.
+ * Mock ConfigFinder class for use in testing. It records what it is asked in
+ * synchronized lists, so it may be shared between threads.
  */
 public class MockConfigFinder implements ConfigFinder {
 
@@ -23,11 +26,21 @@ public class MockConfigFinder implements ConfigFinder {
      */
     private List<String> existenceChecks;
 
+    /**
+     * List of directories that were listed, in the order they were listed.
+     */
+    private List<String> listedDirectories;
+
     /**
      * Paths that should exist in the test, together with their contents.
      */
     private Map<String, String> pathContents;
 
+    /**
+     * Modification times of paths, for those paths that have one.
+     */
+    private Map<String, Long> modificationTimes;
+
     /**
      * Create a mock instance.
      *
@@ -51,8 +64,13 @@ public class MockConfigFinder implements ConfigFinder {
      */
     protected MockConfigFinder(final Map<String, String> givenPathContents) {
         pathContents = givenPathContents;
-        readPaths = new ArrayList<String>();
-        existenceChecks = new ArrayList<String>();
+        readPaths = Collections.synchronizedList(new ArrayList<String>());
+        existenceChecks = Collections
+                .synchronizedList(new ArrayList<String>());
+        listedDirectories = Collections
+                .synchronizedList(new ArrayList<String>());
+        modificationTimes = Collections
+                .synchronizedMap(new HashMap<String, Long>());
     }
 
     /**
@@ -79,6 +97,60 @@ public class MockConfigFinder implements ConfigFinder {
         return pathContents.containsKey(path);
     }
 
+    /**
+     * Lists the paths directly under the directory that end in the extension,
+     * in reverse order so that callers must sort them themselves.
+     */
+    @Override
+    public List<String> listFiles(final String directory,
+            final String extension) {
+        listedDirectories.add(directory);
+        List<String> found = new ArrayList<String>();
+        String prefix = directory + "/";
+        for (String path : pathContents.keySet()) {
+            if (path.startsWith(prefix)
+                    && path.indexOf('/', prefix.length()) < 0
+                    && path.endsWith(extension)) {
+                found.add(path);
+            }
+        }
+        Collections.sort(found, Collections.reverseOrder());
+        return found;
+    }
+
+    /**
+     * Gives the modification time set by <code>setLastModified</code>, or -1.
+     */
+    @Override
+    public long lastModified(final String path) {
+        Long modified = modificationTimes.get(path);
+        if (modified == null) {
+            return -1;
+        }
+        return modified;
+    }
+
+    /**
+     * Allows the tester to set when a path was last modified.
+     *
+     * @param path
+     *                     the path.
+     * @param modified
+     *                     the modification time.
+     */
+    public void setLastModified(final String path, final long modified) {
+        modificationTimes.put(path, modified);
+    }
+
+    /**
+     * Allows the tester to sense what directories were listed.
+     *
+     * @return a list of directories that were listed.
+     */
+    public List<String> getListedDirectories() {
+        return listedDirectories;
+    }
+
     /**
      * Allows the tester to sense what files were checked for existence.
      *
@@ -0,0 +1,92 @@
+package io.github.djhaskin987.gumshoe;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the first gather and <code>getProperty</code> made in a fresh JVM.
+ * Each fork runs the benchmark exactly once, so the score includes loading
+ * and initializing Gumshoe's classes. It does not include starting the JVM,
+ * nor anything JMH does before the benchmark starts, which may already have
+ * loaded some of the JDK classes Gumshoe uses.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+        /**
+         * Files to be found by the finder.
+         */
+        private Map<String, String> mockConfigFiles;
+
+        /**
+         * System properties to find the files with.
+         */
+        private Properties systemProperties;
+
+        /**
+         * Set up the files and System properties without touching Gumshoe.
+         */
+        @Setup
+        public void setUp() {
+                mockConfigFiles = Map.of("/home/.myprogram/config.properties",
+                                "a.b.c=true");
+                systemProperties = new Properties();
+                systemProperties.putAll(Map.of("file.separator", "/",
+                                "user.home", "/home", "user.dir", "/a/b/c"));
+        }
+
+        /**
+         * Gather options once and look one up.
+         *
+         * @return the option looked up.
+         * @throws IOException
+         *                              never, as files are mocked.
+         * @throws Gumshoe.GumshoeException
+         *                              never, as the arguments are valid.
+         */
+        @Benchmark
+        public String timeToFirstGetProperty()
+                        throws IOException, Gumshoe.GumshoeException {
+                final Map<String, String> files = mockConfigFiles;
+                ConfigFinder finder = new ConfigFinder() {
+                        public boolean pathExists(final String path) {
+                                return files.containsKey(path);
+                        }
+
+                        public InputStream getInputStream(final String path) {
+                                return new ByteArrayInputStream(files.get(path)
+                                                .getBytes(UTF_8));
+                        }
+                };
+                PreparedGumshoe prepared = Gumshoe.builder()
+                                .programName("myprogram").configFinder(finder)
+                                .systemProperties(systemProperties)
+                                .environment(Map.of("MYPROGRAM_A", "b"))
+                                .build();
+                return prepared.gatherOptions(new String[] {"--set-a-b-d",
+                                "e", "--enable-f" }).getOptionsMap()
+                                .getProperty("a.b.c");
+        }
+}